@@ -1,4 +1,4 @@
-package org.openhab.binding.jablotron.internal;
+package org.openhab.binding.jablotron;
 
 /**
  * Created by Ondřej Pečta on 28. 3. 2017.
@@ -33,4 +33,17 @@ public enum JablotronCode {
     public int getCode() {
         return code;
     }
+
+    /**
+     * @param code event code reported by the alarm
+     * @return the matching constant or null if the code is not known
+     */
+    public static JablotronCode fromCode(int code) {
+        for (JablotronCode value : values()) {
+            if (value.code == code) {
+                return value;
+            }
+        }
+        return null;
+    }
 }
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.jablotron;
+
+/**
+ * A transition seen by the Jablotron binding: a section or PG output changing its state,
+ * the alarm being raised or cleared, or a new event code reported by the alarm.
+ *
+ * @author Ondrej Pecta
+ * @since 1.12.0
+ */
+public class JablotronEvent {
+
+    public enum Type {
+        SECTION,
+        PG,
+        ALARM,
+        CODE
+    }
+
+    private final Type type;
+    private final String name;
+    private final int oldState;
+    private final int newState;
+    private final JablotronCode code;
+    private final long timestamp;
+
+    public JablotronEvent(Type type, String name, int oldState, int newState, JablotronCode code, long timestamp) {
+        this.type = type;
+        this.name = name;
+        this.oldState = oldState;
+        this.newState = newState;
+        this.code = code;
+        this.timestamp = timestamp;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return section or PG name (A, B, ABC, PGX, PGY), "alarm" or "code"
+     */
+    public String getName() {
+        return name;
+    }
+
+    public int getOldState() {
+        return oldState;
+    }
+
+    public int getNewState() {
+        return newState;
+    }
+
+    /**
+     * @return the decoded event code for {@link Type#CODE} events, null otherwise
+     */
+    public JablotronCode getCode() {
+        return code;
+    }
+
+    /**
+     * @return time the transition was seen by the binding (or reported by the alarm for codes) in ms
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "JablotronEvent{" + type + " " + name + ": " + oldState + " -> " + newState
+                + (code != null ? " " + code : "") + "}";
+    }
+}
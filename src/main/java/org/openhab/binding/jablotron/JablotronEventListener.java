@@ -0,0 +1,19 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.jablotron;
+
+/**
+ * Receives {@link JablotronEvent}s on the dispatcher thread of its subscription.
+ *
+ * @author Ondrej Pecta
+ * @since 1.12.0
+ */
+public interface JablotronEventListener {
+    void eventReceived(JablotronEvent event);
+}
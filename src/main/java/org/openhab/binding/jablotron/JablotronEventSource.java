@@ -0,0 +1,38 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.jablotron;
+
+/**
+ * OSGi service of the Jablotron binding delivering alarm transitions to other bundles.
+ * Each subscription gets its own bounded queue and dispatcher thread, events which do not
+ * fit into the queue of a slow listener are dropped instead of delaying the binding.
+ * Subscriptions are closed when the bundle the listener class belongs to is stopped.
+ *
+ * @author Ondrej Pecta
+ * @since 1.12.0
+ */
+public interface JablotronEventSource {
+
+    /**
+     * @param listener listener to be called
+     * @param capacity maximum number of undelivered events from 1 to 65536, rounded up to a power of two
+     * @return the subscription, close it to stop the delivery
+     * @throws IllegalArgumentException if the capacity is out of range
+     */
+    JablotronSubscription subscribe(JablotronEventListener listener, int capacity);
+
+    interface JablotronSubscription {
+        /**
+         * @return number of events dropped because the queue was full
+         */
+        long getDroppedCount();
+
+        void close();
+    }
+}
@@ -8,30 +8,54 @@
  */
 package org.openhab.binding.jablotron.internal;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
 import org.apache.commons.lang.StringUtils;
 import org.openhab.binding.jablotron.JablotronBindingProvider;
+import org.openhab.binding.jablotron.JablotronCode;
+import org.openhab.binding.jablotron.JablotronEvent;
+import org.openhab.binding.jablotron.JablotronEventListener;
+import org.openhab.binding.jablotron.JablotronEventSource;
 import org.openhab.core.binding.AbstractActiveBinding;
+import org.openhab.core.binding.BindingProvider;
 import org.openhab.core.items.ItemNotFoundException;
 import org.openhab.core.items.ItemRegistry;
 import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.library.types.OnOffType;
 import org.openhab.core.library.types.OpenClosedType;
 import org.openhab.core.library.types.StringType;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.State;
+import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.service.http.HttpService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.net.ssl.HttpsURLConnection;
-import java.io.DataOutputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
 
 
 /**
@@ -41,23 +65,21 @@ import java.util.Map;
  * @author Ondrej Pecta
  * @since 1.9.0
  */
-public class JablotronBinding extends AbstractActiveBinding<JablotronBindingProvider> {
+public class JablotronBinding extends AbstractActiveBinding<JablotronBindingProvider> implements JablotronEventSource {
 
     private static final Logger logger =
             LoggerFactory.getLogger(JablotronBinding.class);
 
-    private final String JABLOTRON_URL = "https://www.jablonet.net/";
-    private final String SERVICE_URL = "app/oasis?service=";
-    private final String AGENT = "Mozilla/5.0 (Windows NT 6.1; WOW64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/54.0.2840.59 Safari/537.36";
     //private final int MAX_SESSION_CYCLE = 500;
 
     private String email = "";
     private String password = "";
-    private String session = "";
-    private String service;
-    private ArrayList<String> cookies = new ArrayList<>();
-
-    ArrayList<String> services = new ArrayList<>();
+    private final JablotronSession session;
+    private JablotronCaptureTransport capture;
+    private String captureFile = "";
+    private volatile JablotronLease lease;
+    private volatile Thread heartbeat;
+    private String coordination = "";
 
     //Section states
     private int stavA = 0;
@@ -65,8 +87,43 @@ public class JablotronBinding extends AbstractActiveBinding<JablotronBindingProv
     private int stavABC = 0;
     private int stavPGX = 0;
     private int stavPGY = 0;
-    private boolean controlDisabled = true;
-    private boolean inService = false;
+    private JablotronSessionState state = JablotronSessionState.LOGGED_OUT;
+    private long nextAttempt = 0;
+    private long backoff = 0;
+    private volatile JablotronResponse lastStatus = null;
+    private volatile long lastStatusTime = 0;
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean(false);
+
+    //Event subscriptions and the states (A, B, ABC, PGX, PGY, alarm) last reported to them
+    private static final String[] EVENT_NAMES = {"A", "B", "ABC", "PGX", "PGY", "alarm"};
+    private final List<JablotronSubscriber> subscribers = new CopyOnWriteArrayList<>();
+    //closes the subscriptions of bundles stopped without closing them
+    private final BundleListener bundleListener = new BundleListener() {
+        @Override
+        public void bundleChanged(BundleEvent event) {
+            if (event.getType() == BundleEvent.STOPPED) {
+                closeSubscriptions(event.getBundle().getBundleId());
+            }
+        }
+    };
+    private int[] eventStates = null;
+    private long lastEventTime = 0;
+    private final JablotronStatistics statistics = new JablotronStatistics(ZoneId.systemDefault());
+    private static final int MAX_RECENT_EVENTS = 50;
+    private final ArrayDeque<JablotronEvent> recentEvents = new ArrayDeque<>();
+
+    //Local read-only status endpoint
+    private HttpService httpService;
+    private volatile JablotronStatusServlet statusServlet;
+    private String statusPath = "";
+    private boolean statusAllowRemote = false;
+
+    //Expected section states (A, B, ABC) after entering a configured code
+    private volatile Map<String, int[]> codeStates = new HashMap<>();
+    //Section states published ahead of the panel, null if no command is being confirmed
+    private volatile int[] pendingStates = null;
+    //PG output switched by the command being confirmed, null if none
+    private volatile String pendingPG = null;
 
     //cycle
     //private int cycle = randomWithRange(0, MAX_SESSION_CYCLE - 1);
@@ -85,7 +142,60 @@ public class JablotronBinding extends AbstractActiveBinding<JablotronBindingProv
      */
     private long refreshInterval = 900000;
 
+    /**
+     * how long and how often the status is polled to confirm a sent code
+     */
+    private long confirmTimeout = 15000;
+    private long confirmInterval = 1000;
+
+    /**
+     * newly bound items are published from the last status if it is not older than this
+     */
+    private long snapshotMaxAge = 60000;
+
+    /**
+     * retry delays of the session states
+     */
+    private long serviceProbeInterval = 1800000;
+
+    /**
+     * update policies configured by item name or binding, and their per item instances
+     */
+    private volatile Map<String, JablotronUpdatePolicy> policyTemplates = new HashMap<>();
+    private final ConcurrentHashMap<String, JablotronUpdatePolicy> itemPolicies = new ConcurrentHashMap<>();
+
+    /**
+     * posts of states held back by a policy, scheduled for the end of the policy window
+     */
+    private final ScheduledThreadPoolExecutor heldPostExecutor;
+    private final ConcurrentHashMap<String, ScheduledFuture<?>> heldPosts = new ConcurrentHashMap<>();
+
+    /**
+     * keep the Jablonet session between polls so PG outputs can be switched by one request
+     */
+    private boolean keepSession = false;
+    private static final long BUSY_RETRY = 30000;
+    private static final long MIN_BACKOFF = 60000;
+    private static final long MAX_BACKOFF = 3600000;
+    private static final long MIN_LEASE_TIMEOUT = 3000;
+
     public JablotronBinding() {
+        this(new JablotronHttpsTransport());
+    }
+
+    /**
+     * @param transport transport used until a capture file is configured, e.g. a simulated cloud
+     */
+    JablotronBinding(JablotronTransport transport) {
+        session = new JablotronSession(transport);
+        heldPostExecutor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "Jablotron held post");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heldPostExecutor.setKeepAliveTime(60, TimeUnit.SECONDS);
+        heldPostExecutor.allowCoreThreadTimeOut(true);
+        heldPostExecutor.setRemoveOnCancelPolicy(true);
     }
 
 
@@ -97,31 +207,237 @@ public class JablotronBinding extends AbstractActiveBinding<JablotronBindingProv
      */
     public void activate(final BundleContext bundleContext, final Map<String, Object> configuration) {
         this.bundleContext = bundleContext;
+        if (bundleContext != null) {
+            bundleContext.addBundleListener(bundleListener);
+        }
 
         // the configuration is guaranteed not to be null, because the component definition has the
         // configuration-policy set to require. If set to 'optional' then the configuration may be null
 
-        readConfiguration(configuration);
-        setProperlyConfigured(true);
+        if (readConfiguration(configuration)) {
+            setProperlyConfigured(true);
+        }
     }
 
-    private void readConfiguration(Map<String, Object> configuration) {
-        String refreshIntervalString = (String) configuration.get("refresh");
-        if (StringUtils.isNotBlank(refreshIntervalString)) {
-            refreshInterval = Long.parseLong(refreshIntervalString);
+    /**
+     * Reads the whole configuration first and applies only what has changed, so a running
+     * poll or command completes with the old settings and the published states are kept.
+     *
+     * @return false if the configuration is invalid and has not been applied
+     */
+    private boolean readConfiguration(Map<String, Object> configuration) {
+        long newRefreshInterval;
+        long newConfirmTimeout;
+        long newConfirmInterval;
+        long newSnapshotMaxAge;
+        long newServiceProbeInterval;
+        long newLeaseTimeout;
+        Map<String, JablotronUpdatePolicy> newPolicyTemplates = new HashMap<>();
+        try {
+            newRefreshInterval = getLong(configuration, "refresh", refreshInterval, 1);
+            newConfirmTimeout = getLong(configuration, "confirmTimeout", confirmTimeout, 1);
+            newConfirmInterval = getLong(configuration, "confirmInterval", confirmInterval, 1);
+            newSnapshotMaxAge = getLong(configuration, "snapshotMaxAge", snapshotMaxAge, 1);
+            newServiceProbeInterval = getLong(configuration, "serviceProbeInterval", serviceProbeInterval, 1);
+            newLeaseTimeout = getLong(configuration, "leaseTimeout", 30000, MIN_LEASE_TIMEOUT);
+            for (Map.Entry<String, Object> entry : configuration.entrySet()) {
+                if (entry.getKey().startsWith("policy.") && entry.getValue() instanceof String
+                        && StringUtils.isNotBlank((String) entry.getValue())) {
+                    newPolicyTemplates.put(entry.getKey().substring("policy.".length()),
+                            new JablotronUpdatePolicy((String) entry.getValue()));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid Jablotron configuration: {}", e.toString());
+            return false;
+        }
+
+        String newEmail = getString(configuration, "email", email);
+        String newPassword = getString(configuration, "password", password);
+        String newCaptureFile = getString(configuration, "capture", "");
+
+        Map<String, int[]> newCodeStates = new HashMap<>();
+        addCodeStates(newCodeStates, (String) configuration.get("armACode"), 1, 0, 0);
+        addCodeStates(newCodeStates, (String) configuration.get("armBCode"), 1, 1, 0);
+        addCodeStates(newCodeStates, (String) configuration.get("armABCCode"), 1, 1, 1);
+        addCodeStates(newCodeStates, (String) configuration.get("disarmCode"), 0, 0, 0);
+
+        String newStatusPath = getString(configuration, "statusPath", "");
+        boolean newStatusAllowRemote = Boolean.parseBoolean(getString(configuration, "statusAllowRemote", "false"));
+
+        String coordinationDir = getString(configuration, "coordinationDir", "");
+        String nodeId = getString(configuration, "nodeId", ManagementFactory.getRuntimeMXBean().getName());
+        String newCoordination = coordinationDir + "|" + nodeId + "|" + newLeaseTimeout + "|" + newEmail;
+
+        synchronized (session) {
+            //the session lock lets a running poll or command finish first
+            if (!newEmail.equals(email) || !newPassword.equals(password)) {
+                if (session.isLoggedIn()) {
+                    logout();
+                }
+                email = newEmail;
+                password = newPassword;
+                session.setCredentials(email, password);
+                setState(JablotronSessionState.LOGGED_OUT, 0);
+                logger.debug("Jablonet credentials changed, a new session will be established");
+            }
+
+            if (!newCaptureFile.equals(captureFile)) {
+                captureFile = newCaptureFile;
+                setupTransport(captureFile);
+            }
+
+            confirmTimeout = newConfirmTimeout;
+            confirmInterval = newConfirmInterval;
+            snapshotMaxAge = newSnapshotMaxAge;
+            serviceProbeInterval = newServiceProbeInterval;
+            keepSession = Boolean.parseBoolean(getString(configuration, "keepSession", "false"));
+            policyTemplates = newPolicyTemplates;
+            //keep the history of items whose policy has not changed
+            for (Map.Entry<String, JablotronUpdatePolicy> entry : itemPolicies.entrySet()) {
+                JablotronUpdatePolicy template = getPolicyTemplate(newPolicyTemplates, entry.getKey(),
+                        getItemSection(entry.getKey()));
+                if (template == null || !template.getSpec().equals(entry.getValue().getSpec())) {
+                    itemPolicies.remove(entry.getKey());
+                    cancelHeldPost(entry.getKey());
+                }
+            }
+            codeStates = newCodeStates;
         }
 
-        String emailString = (String) configuration.get("email");
-        if (StringUtils.isNotBlank(emailString)) {
-            email = emailString;
+        if (!newStatusPath.equals(statusPath) || newStatusAllowRemote != statusAllowRemote) {
+            unregisterStatusServlet();
+            statusPath = newStatusPath;
+            statusAllowRemote = newStatusAllowRemote;
+            registerStatusServlet();
         }
 
-        String passwordString = (String) configuration.get("password");
-        if (StringUtils.isNotBlank(passwordString)) {
-            password = passwordString;
+        if (!newCoordination.equals(coordination)) {
+            coordination = newCoordination;
+            setupCoordination(coordinationDir, nodeId, newLeaseTimeout);
+        }
+
+        refreshInterval = newRefreshInterval;
+        return true;
+    }
+
+    private long getLong(Map<String, Object> configuration, String key, long defaultValue, long minValue) {
+        String text = (String) configuration.get(key);
+        long value = StringUtils.isNotBlank(text) ? Long.parseLong(text.trim()) : defaultValue;
+        if (value < minValue) {
+            throw new IllegalArgumentException(key + " must be at least " + minValue + ", got " + value);
+        }
+        return value;
+    }
+
+    private String getString(Map<String, Object> configuration, String key, String defaultValue) {
+        String value = (String) configuration.get(key);
+        return StringUtils.isNotBlank(value) ? value : defaultValue;
+    }
+
+    private void addCodeStates(Map<String, int[]> codeStates, String code, int... states) {
+        if (StringUtils.isNotBlank(code)) {
+            codeStates.put(code.trim(), states);
+        }
+    }
+
+    private void setupCoordination(String directory, String nodeId, long leaseTimeout) {
+        stopCoordination();
+        if (StringUtils.isBlank(directory)) {
+            return;
+        }
+
+        try {
+            lease = new JablotronLease(directory, email, nodeId, leaseTimeout);
+        } catch (IOException e) {
+            logger.error("Cannot use coordination directory {}: {}", directory, e.toString());
+            return;
+        }
+        lease.renew();
+
+        final JablotronLease heartbeatLease = lease;
+        heartbeat = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        boolean wasHolder = heartbeatLease.isHolder();
+                        if (heartbeatLease.renew()) {
+                            if (!wasHolder) {
+                                //take over polling from the failed holder right away
+                                scheduleRefresh();
+                            }
+                        } else {
+                            publishSnapshot(heartbeatLease);
+                        }
+                    } catch (Exception e) {
+                        logger.error("Jablotron lease heartbeat exception: {}", e.toString());
+                    }
+                    try {
+                        Thread.sleep(heartbeatLease.getTimeout() / 3);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }, "Jablotron lease heartbeat");
+        heartbeat.setDaemon(true);
+        heartbeat.start();
+    }
+
+    private void stopCoordination() {
+        Thread currentHeartbeat = heartbeat;
+        if (currentHeartbeat != null) {
+            heartbeat = null;
+            currentHeartbeat.interrupt();
+            try {
+                //a heartbeat still renewing could take the lease again after it has been released
+                currentHeartbeat.join(lease != null ? lease.getTimeout() : MIN_LEASE_TIMEOUT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (lease != null) {
+            lease.release();
+            lease = null;
         }
     }
 
+    /**
+     * Publishes the status polled by the lease holder on another node.
+     */
+    private void publishSnapshot(JablotronLease lease) {
+        String status = lease.readSnapshotIfChanged();
+        if (status == null || eventPublisher == null || itemRegistry == null) {
+            return;
+        }
+
+        JablotronResponse response = new JablotronResponse(200, status, "");
+        if (response.isOKStatus() && response.hasSectionStatus()) {
+            synchronized (session) {
+                readAlarmStatus(response);
+            }
+        }
+    }
+
+    private void setupTransport(String captureFile) {
+        if (capture != null) {
+            capture.close();
+            capture = null;
+        }
+
+        JablotronTransport transport = new JablotronHttpsTransport();
+        if (StringUtils.isNotBlank(captureFile)) {
+            try {
+                capture = new JablotronCaptureTransport(transport, captureFile);
+                transport = capture;
+            } catch (IOException e) {
+                logger.error("Cannot open capture file {}: {}", captureFile, e.toString());
+            }
+        }
+        session.setTransport(transport);
+    }
+
     /**
      * Called by the SCR when the configuration of a binding has been changed through the ConfigAdmin service.
      *
@@ -130,10 +446,80 @@ public class JablotronBinding extends AbstractActiveBinding<JablotronBindingProv
     public void modified(final Map<String, Object> configuration) {
         // update the internal configuration accordingly
         if (configuration != null) {
-            readConfiguration(configuration);
+            long previousRefreshInterval = refreshInterval;
+            if (!readConfiguration(configuration)) {
+                logger.error("Keeping the current Jablotron configuration");
+                return;
+            }
+            if (!isProperlyConfigured()) {
+                //the configuration has been rejected on activation
+                setProperlyConfigured(true);
+            } else if (refreshInterval != previousRefreshInterval) {
+                //restart the refresh thread, it polls right away and then sleeps the new interval
+                setProperlyConfigured(false);
+                setProperlyConfigured(true);
+            } else {
+                scheduleRefresh();
+            }
+        }
+    }
+
+    /**
+     * @{inheritDoc}
+     */
+    @Override
+    public void bindingChanged(BindingProvider provider, String itemName) {
+        super.bindingChanged(provider, itemName);
+        if (provider.providesBindingFor(itemName)) {
+            refreshItems(Collections.singletonList(itemName));
         }
     }
 
+    /**
+     * @{inheritDoc}
+     */
+    @Override
+    public void allBindingsChanged(BindingProvider provider) {
+        super.allBindingsChanged(provider);
+        refreshItems(provider.getItemNames());
+    }
+
+    /**
+     * Publishes newly bound items from the last status if it is fresh enough,
+     * otherwise asks the cloud again out of the regular cycle.
+     */
+    private void refreshItems(Collection<String> itemNames) {
+        if (itemNames.isEmpty() || eventPublisher == null || itemRegistry == null) {
+            return;
+        }
+
+        JablotronResponse response = lastStatus;
+        if (response != null && System.currentTimeMillis() - lastStatusTime < snapshotMaxAge) {
+            logger.debug("Publishing {} bound item(s) from the last status", itemNames.size());
+            for (String itemName : itemNames) {
+                publishItem(itemName, response);
+            }
+        } else {
+            scheduleRefresh();
+        }
+    }
+
+    private void scheduleRefresh() {
+        if (!isProperlyConfigured() || !refreshScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                refreshScheduled.set(false);
+                execute();
+            }
+        }, "Jablotron immediate refresh");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     /**
      * Called by the SCR to deactivate the component when either the configuration is removed or
      * mandatory references are no longer satisfied or the component has simply been stopped.
@@ -150,38 +536,70 @@ public class JablotronBinding extends AbstractActiveBinding<JablotronBindingProv
      *               </ul>
      */
     public void deactivate(final int reason) {
+        if (bundleContext != null) {
+            bundleContext.removeBundleListener(bundleListener);
+        }
         this.bundleContext = null;
         // deallocate resources here that are no longer needed and
         // should be reset when activating this binding again
-        if (!session.isEmpty()) {
+        if (session.isLoggedIn()) {
             logout();
         }
-        services.clear();
+        session.getServices().clear();
+        if (capture != null) {
+            capture.close();
+            capture = null;
+        }
+        captureFile = "";
+        stopCoordination();
+        coordination = "";
+        unregisterStatusServlet();
+        statusPath = "";
+        for (JablotronSubscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+        subscribers.clear();
+        for (String itemName : heldPosts.keySet()) {
+            cancelHeldPost(itemName);
+        }
     }
 
-    private void logout() {
-
-        String url = JABLOTRON_URL + "logout";
-        try {
-            URL cookieUrl = new URL(url);
+    /**
+     * @{inheritDoc}
+     */
+    @Override
+    public JablotronSubscription subscribe(JablotronEventListener listener, int capacity) {
+        Bundle owner = FrameworkUtil.getBundle(listener.getClass());
+        JablotronSubscriber subscriber = new JablotronSubscriber(listener, capacity, (owner != null) ? owner.getBundleId() : -1);
+        subscribers.add(subscriber);
+        return subscriber;
+    }
 
-            HttpsURLConnection connection = (HttpsURLConnection) cookieUrl.openConnection();
-            connection.setRequestMethod("GET");
-            connection.setRequestProperty("Referer", JABLOTRON_URL + SERVICE_URL + service);
-            connection.setRequestProperty("Cookie", session);
-            connection.setRequestProperty("Upgrade-Insecure-Requests", "1");
-            setConnectionDefaults(connection);
+    private void closeSubscriptions(long bundleId) {
+        for (JablotronSubscriber subscriber : subscribers) {
+            if (subscriber.getOwnerId() == bundleId) {
+                logger.debug("Closing Jablotron subscription of stopped bundle {}", bundleId);
+                subscriber.close();
+                subscribers.remove(subscriber);
+            }
+        }
+    }
 
-            JablotronResponse response = new JablotronResponse(connection);
+    /**
+     * Closes the session. A kept session is expected to stay open, so its closing is shown by the
+     * state item unless a retry is already scheduled. Without keepSession the state item keeps the
+     * condition found by the last poll.
+     */
+    private void logout() {
+        try {
+            session.logout();
         } catch (Exception e) {
             //Silence
             //logger.error(e.toString());
-        } finally {
-            controlDisabled = true;
-            inService = false;
-            session = "";
         }
-        return;
+        if (keepSession && !state.isDelayed()) {
+            setState(JablotronSessionState.LOGGED_OUT, 0);
+        }
     }
 
     public void setItemRegistry(ItemRegistry itemRegistry) {
@@ -223,45 +641,53 @@ public class JablotronBinding extends AbstractActiveBinding<JablotronBindingProv
             return;
         }*/
 
+        JablotronLease currentLease = lease;
+        if (currentLease != null && !currentLease.isHolder()) {
+            logger.debug("Not holding the Jablotron lease, publishing the shared status");
+            publishSnapshot(currentLease);
+            return;
+        }
+
         synchronized (session) {
+            if (state.isDelayed() && System.currentTimeMillis() < nextAttempt) {
+                logger.debug("Skipping Jablotron poll in state {}", state);
+                return;
+            }
             try {
-                if (session.isEmpty()) {
+                if (!session.isLoggedIn()) {
                     login();
                 }
-                if (!session.isEmpty()) {
+                if (session.isLoggedIn()) {
                     updateAlarmStatus();
                 }
             } catch (Exception ex) {
                 logger.error("execute exception: {}", ex.toString());
             } finally {
-                logout();
+                if (!keepSession) {
+                    logout();
+                }
             }
         }
     }
 
     private boolean updateAlarmStatus() {
-        JablotronResponse response = sendGetStatusRequest();
+        JablotronResponse response = session.requestStatus();
         if (response.getException() != null) {
             logger.error("sendGetStatusRequest exception: {}", response.getException().toString());
-            session = "";
+            setBackoff();
             return false;
         }
         logger.debug("sendGetStatusRequest response: {}", response.getResponse());
 
         if (response.getResponseCode() != 200) {
             logger.error("Cannot get alarm status, invalid response code: {}", response.getResponseCode());
+            setBackoff();
             return false;
         }
 
-        if (response.isNoSessionStatus()) {
-            session = "";
-            controlDisabled = true;
-            inService = false;
-            login();
-            response = sendGetStatusRequest();
-        }
         if (response.isBusyStatus()) {
             logger.warn("OASIS is busy...giving up");
+            setState(JablotronSessionState.BUSY, System.currentTimeMillis() + BUSY_RETRY);
             logout();
             return false;
         }
@@ -269,25 +695,34 @@ public class JablotronBinding extends AbstractActiveBinding<JablotronBindingProv
             response.getReport();
         }
 
-        inService = response.inService();
-
-        if (inService) {
-            logger.warn("Alarm is in service mode...");
+        if (response.inService()) {
+            if (state != JablotronSessionState.SERVICE_MODE) {
+                logger.warn("Alarm is in service mode...");
+            }
+            setState(JablotronSessionState.SERVICE_MODE, System.currentTimeMillis() + serviceProbeInterval);
             return false;
         }
 
         if (response.isOKStatus() && response.hasSectionStatus()) {
+            backoff = 0;
+            setState(response.isControlDisabled() ? JablotronSessionState.CONTROL_DISABLED : JablotronSessionState.ACTIVE, 0);
             readAlarmStatus(response);
+            JablotronLease currentLease = lease;
+            if (currentLease != null && currentLease.isHolder()) {
+                currentLease.writeSnapshot(response.getResponse());
+            }
         } else {
             logger.error("Cannot get alarm status! {}", response.getResponse());
-            session = "";
+            session.invalidate();
+            setBackoff();
             return false;
         }
         return true;
     }
 
     private void readAlarmStatus(JablotronResponse response) {
-        controlDisabled = response.isControlDisabled();
+        lastStatus = response;
+        lastStatusTime = System.currentTimeMillis();
 
         stavA = response.getSectionState(0);
         stavB = response.getSectionState(1);
@@ -302,230 +737,343 @@ public class JablotronBinding extends AbstractActiveBinding<JablotronBindingProv
         logger.debug("Stav PGX: {}", stavPGX);
         logger.debug("Stav PGY: {}", stavPGY);
 
+        processTransitions(response);
+        updateStatusDocument();
+        publishItems(response);
+    }
+
+    private void publishItems(JablotronResponse response) {
         for (final JablotronBindingProvider provider : providers) {
             for (final String itemName : provider.getItemNames()) {
-                String type = getItemSection(itemName);
-                State oldState;
-                State newState = null;
-
-
-                try {
-                    oldState = itemRegistry.getItem(itemName).getState();
-                } catch (ItemNotFoundException e) {
-                    logger.error("Item not found: {}", e.toString());
-                    oldState = null;
-                }
-                newState = oldState;
-
-                switch (type) {
-                    case "A":
-                        newState = (stavA == 1) ? OnOffType.ON : OnOffType.OFF;
-                        break;
-                    case "B":
-                        newState = (stavB == 1) ? OnOffType.ON : OnOffType.OFF;
-                        break;
-                    case "ABC":
-                        newState = (stavABC == 1) ? OnOffType.ON : OnOffType.OFF;
-                        break;
-                    case "PGX":
-                        newState = (stavPGX == 1) ? OnOffType.ON : OnOffType.OFF;
-                        break;
-                    case "PGY":
-                        newState = (stavPGY == 1) ? OnOffType.ON : OnOffType.OFF;
-                        break;
-                    case "alarm":
-                        newState = (response.isAlarm()) ? OpenClosedType.OPEN : OpenClosedType.CLOSED;
-                        break;
-                    case "lasteventtime":
-                        Date lastEvent = response.getLastResponseTime();
-                        if (lastEvent != null) {
-                            Calendar cal = Calendar.getInstance();
-                            cal.setTime(lastEvent);
-                            newState = new DateTimeType(cal);
-                        }
-                        break;
-                }
+                publishItem(itemName, response);
+            }
+        }
+    }
 
-                if (newState != null && !newState.equals(oldState)) {
-                    eventPublisher.postUpdate(itemName, newState);
-                }
+    private void setState(JablotronSessionState newState, long retryAt) {
+        nextAttempt = retryAt;
+        if (newState != state) {
+            logger.debug("Jablotron session state changed from {} to {}", state, newState);
+            state = newState;
+            if (eventPublisher != null) {
+                publishState("state", new StringType(newState.name()));
             }
+            updateStatusDocument();
         }
     }
 
-    /*
-    private int randomWithRange(int min, int max) {
-        int range = (max - min) + 1;
-        return (int) (Math.random() * range) + min;
-    }*/
+    /**
+     * Hands the current status and recent events over to the local status endpoint.
+     */
+    private void updateStatusDocument() {
+        JablotronStatusServlet servlet = statusServlet;
+        if (servlet == null) {
+            return;
+        }
 
+        JsonObject document = new JsonObject();
+        document.addProperty("state", state.name());
+        if (eventStates != null) {
+            JsonObject sections = new JsonObject();
+            JsonObject pgs = new JsonObject();
+            for (int i = 0; i < 5; i++) {
+                (i < 3 ? sections : pgs).addProperty(EVENT_NAMES[i], eventStates[i]);
+            }
+            document.add("sections", sections);
+            document.add("pg", pgs);
+            document.addProperty("alarm", eventStates[5]);
+            document.addProperty("lastEvent", lastEventTime);
+        }
+        JsonArray events = new JsonArray();
+        for (JablotronEvent event : recentEvents) {
+            JsonObject item = new JsonObject();
+            item.addProperty("type", event.getType().name());
+            item.addProperty("name", event.getName());
+            item.addProperty("old", event.getOldState());
+            item.addProperty("new", event.getNewState());
+            if (event.getCode() != null) {
+                item.addProperty("code", event.getCode().name());
+            }
+            item.addProperty("time", event.getTimestamp());
+            events.add(item);
+        }
+        document.add("events", events);
+        servlet.update(document);
+    }
 
-    private JablotronResponse sendGetStatusRequest() {
+    public void setHttpService(HttpService httpService) {
+        this.httpService = httpService;
+        registerStatusServlet();
+    }
 
-        String url = JABLOTRON_URL + "app/oasis/ajax/stav.php?" + getBrowserTimestamp();
-        try {
-            URL cookieUrl = new URL(url);
+    public void unsetHttpService(HttpService httpService) {
+        unregisterStatusServlet();
+        this.httpService = null;
+    }
 
+    private void registerStatusServlet() {
+        if (createStatusServlet()) {
+            //serve the current status right away instead of waiting for the next poll
             synchronized (session) {
-                HttpsURLConnection connection = (HttpsURLConnection) cookieUrl.openConnection();
-                connection.setRequestMethod("GET");
-                connection.setRequestProperty("Referer", JABLOTRON_URL + SERVICE_URL + service);
-                connection.setRequestProperty("Cookie", session);
-                connection.setRequestProperty("X-Requested-With", "XMLHttpRequest");
-                setConnectionDefaults(connection);
-
-                return new JablotronResponse(connection);
+                updateStatusDocument();
             }
+        }
+    }
+
+    private synchronized boolean createStatusServlet() {
+        unregisterStatusServlet();
+        if (httpService == null || StringUtils.isBlank(statusPath)) {
+            return false;
+        }
 
+        JablotronStatusServlet servlet = new JablotronStatusServlet(statusAllowRemote);
+        try {
+            httpService.registerServlet(statusPath, servlet, null, httpService.createDefaultHttpContext());
+            statusServlet = servlet;
+            logger.info("Jablotron status is served at {}", statusPath);
+            return true;
         } catch (Exception e) {
-            logger.error("sendGetStatusRequest exception: {}", e.toString());
-            return new JablotronResponse(e);
+            logger.error("Cannot register Jablotron status servlet at {}: {}", statusPath, e.toString());
+            return false;
         }
     }
 
-    private JablotronResponse sendUserCode(String code) {
-        String url = null;
-
+    private synchronized void unregisterStatusServlet() {
+        if (statusServlet == null) {
+            return;
+        }
+        statusServlet = null;
         try {
-            url = JABLOTRON_URL + "app/oasis/ajax/ovladani.php";
-            String urlParameters = "section=STATE&status=" + ((code.isEmpty()) ? "1" : "") + "&code=" + code;
-            byte[] postData = urlParameters.getBytes(StandardCharsets.UTF_8);
+            httpService.unregister(statusPath);
+        } catch (Exception e) {
+            logger.debug("Cannot unregister Jablotron status servlet: {}", e.toString());
+        }
+    }
 
-            URL cookieUrl = new URL(url);
-            HttpsURLConnection connection = (HttpsURLConnection) cookieUrl.openConnection();
-            JablotronResponse response;
+    private void setBackoff() {
+        backoff = (backoff == 0) ? MIN_BACKOFF : Math.min(backoff * 2, MAX_BACKOFF);
+        setState(JablotronSessionState.BACKOFF, System.currentTimeMillis() + backoff);
+    }
 
-            synchronized (session) {
-                connection.setDoOutput(true);
-                connection.setRequestMethod("POST");
-                connection.setRequestProperty("Referer", JABLOTRON_URL + SERVICE_URL + service);
-                connection.setRequestProperty("Cookie", session);
-                connection.setRequestProperty("Content-Length", Integer.toString(postData.length));
-                connection.setRequestProperty("X-Requested-With", "XMLHttpRequest");
-                setConnectionDefaults(connection);
-                try (DataOutputStream wr = new DataOutputStream(connection.getOutputStream())) {
-                    wr.write(postData);
-                }
-                response = new JablotronResponse(connection);
+    private void processTransitions(JablotronResponse response) {
+        int[] states = {stavA, stavB, stavABC, stavPGX, stavPGY, response.isAlarm() ? 1 : 0};
+        int[] previousStates = eventStates;
+        eventStates = states;
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < states.length; i++) {
+            statistics.update(EVENT_NAMES[i], states[i], now);
+        }
+
+        Date lastEvent = response.getLastResponseTime();
+        long eventTime = (lastEvent != null) ? lastEvent.getTime() : 0;
+        long previousEventTime = lastEventTime;
+        lastEventTime = eventTime;
+
+        if (previousStates == null) {
+            return;
+        }
+
+        for (int i = 0; i < states.length; i++) {
+            if (states[i] != previousStates[i]) {
+                JablotronEvent.Type type = (i < 3) ? JablotronEvent.Type.SECTION
+                        : (i < 5) ? JablotronEvent.Type.PG : JablotronEvent.Type.ALARM;
+                fireEvent(new JablotronEvent(type, EVENT_NAMES[i], previousStates[i], states[i], null, now));
+            }
+        }
+        if (eventTime != previousEventTime) {
+            JablotronCode code = JablotronCode.fromCode(response.getLastEventCode());
+            if (code != null) {
+                fireEvent(new JablotronEvent(JablotronEvent.Type.CODE, "code", 0, code.getCode(), code, eventTime));
             }
-            logger.debug("sendUserCode response: {}", response.getResponse());
-            return response;
-        } catch (Exception ex) {
-            logger.error("sendUserCode exception: {}", ex.toString());
         }
-        return null;
     }
 
-    private void login() {
-        String url = null;
+    private void fireEvent(JablotronEvent event) {
+        recentEvents.addLast(event);
+        if (recentEvents.size() > MAX_RECENT_EVENTS) {
+            recentEvents.removeFirst();
+        }
+        for (JablotronSubscriber subscriber : subscribers) {
+            if (subscriber.isClosed()) {
+                subscribers.remove(subscriber);
+            } else if (!subscriber.offer(event)) {
+                logger.debug("Jablotron event dropped for a slow listener: {}", event);
+            }
+        }
+    }
 
-        try {
-            //login
-            stavA = 0;
-            stavB = 0;
-            stavABC = 0;
-            stavPGX = 0;
-            stavPGY = 0;
+    private void publishItem(String itemName, JablotronResponse response) {
+        String type = getItemSection(itemName);
+        if (pendingStates != null && (isSection(type) || type.equals("armstate"))) {
+            //keep the optimistic state until the command is confirmed
+            return;
+        }
+        if (type.equals(pendingPG)) {
+            //keep the auto-updated switch state until the output is confirmed
+            return;
+        }
+        State oldState;
+        State newState = null;
 
-            url = JABLOTRON_URL + "ajax/login.php";
-            String urlParameters = "login=" + email + "&heslo=" + password + "&aStatus=200&loginType=Login";
-            byte[] postData = urlParameters.getBytes(StandardCharsets.UTF_8);
 
-            URL cookieUrl = new URL(url);
-            HttpsURLConnection connection = (HttpsURLConnection) cookieUrl.openConnection();
+        try {
+            oldState = itemRegistry.getItem(itemName).getState();
+        } catch (ItemNotFoundException e) {
+            logger.error("Item not found: {}", e.toString());
+            oldState = null;
+        }
+        newState = oldState;
 
-            synchronized (session) {
-                connection.setDoOutput(true);
-                connection.setRequestMethod("POST");
-                connection.setRequestProperty("Referer", JABLOTRON_URL);
-                connection.setRequestProperty("Content-Length", Integer.toString(postData.length));
-                connection.setRequestProperty("X-Requested-With", "XMLHttpRequest");
-
-                setConnectionDefaults(connection);
-                try (DataOutputStream wr = new DataOutputStream(connection.getOutputStream())) {
-                    wr.write(postData);
+        switch (type) {
+            case "A":
+                newState = (response.getSectionState(0) == 1) ? OnOffType.ON : OnOffType.OFF;
+                break;
+            case "B":
+                newState = (response.getSectionState(1) == 1) ? OnOffType.ON : OnOffType.OFF;
+                break;
+            case "ABC":
+                newState = (response.getSectionState(2) == 1) ? OnOffType.ON : OnOffType.OFF;
+                break;
+            case "armstate":
+                newState = new StringType(getArmState(response.getSectionState(0), response.getSectionState(1),
+                        response.getSectionState(2)));
+                break;
+            case "PGX":
+                newState = (response.getPGState(0) == 1) ? OnOffType.ON : OnOffType.OFF;
+                break;
+            case "PGY":
+                newState = (response.getPGState(1) == 1) ? OnOffType.ON : OnOffType.OFF;
+                break;
+            case "alarm":
+                newState = (response.isAlarm()) ? OpenClosedType.OPEN : OpenClosedType.CLOSED;
+                break;
+            case "state":
+                newState = new StringType(state.name());
+                break;
+            case "lasteventtime":
+                Date lastEvent = response.getLastResponseTime();
+                if (lastEvent != null) {
+                    Calendar cal = Calendar.getInstance();
+                    cal.setTime(lastEvent);
+                    newState = new DateTimeType(cal);
                 }
-
-                JablotronResponse response = new JablotronResponse(connection);
-                if (response.getException() != null) {
-                    logger.error("JablotronResponse login exception: {}", response.getException());
-                    return;
+                break;
+            default:
+                if (type.startsWith("stats:")) {
+                    String[] parts = type.split(":");
+                    newState = new DecimalType(statistics.get(parts[1], parts[2], System.currentTimeMillis()));
                 }
+        }
 
-                if (!response.isOKStatus())
-                    return;
-
-                //get cookie
-                session = response.getCookie();
-
-                //cloud request
+        if (newState == null) {
+            return;
+        }
+        JablotronUpdatePolicy policy = getUpdatePolicy(itemName, type);
+        if (policy == null) {
+            if (!newState.equals(oldState)) {
+                eventPublisher.postUpdate(itemName, newState);
+            }
+            return;
+        }
+        synchronized (policy) {
+            if (policy.shouldPublish(newState, oldState, System.currentTimeMillis())) {
+                eventPublisher.postUpdate(itemName, newState);
+            }
+            scheduleHeldPost(itemName, policy);
+        }
+    }
 
-                url = JABLOTRON_URL + "ajax/widget-new.php?" + getBrowserTimestamp();
-                ;
-                cookieUrl = new URL(url);
-                connection = (HttpsURLConnection) cookieUrl.openConnection();
-                connection.setRequestMethod("GET");
-                connection.setRequestProperty("Referer", JABLOTRON_URL + "cloud");
-                connection.setRequestProperty("Cookie", session);
-                connection.setRequestProperty("X-Requested-With", "XMLHttpRequest");
-                setConnectionDefaults(connection);
+    /**
+     * Schedules the post of a state held back by the policy for the end of its window,
+     * replacing a post scheduled for an older state
+     */
+    private void scheduleHeldPost(final String itemName, final JablotronUpdatePolicy policy) {
+        cancelHeldPost(itemName);
+        long heldUntil = policy.getHeldUntil();
+        if (heldUntil == 0) {
+            return;
+        }
+        long delay = Math.max(0, heldUntil - System.currentTimeMillis());
+        heldPosts.put(itemName, heldPostExecutor.schedule(() -> postHeldState(itemName, policy), delay, TimeUnit.MILLISECONDS));
+    }
 
-                //line = readResponse(connection);
-                response = new JablotronResponse(connection);
+    private void cancelHeldPost(String itemName) {
+        ScheduledFuture<?> heldPost = heldPosts.remove(itemName);
+        if (heldPost != null) {
+            heldPost.cancel(false);
+        }
+    }
 
-                if (response.getException() != null) {
-                    logger.error("JablotronResponse widget exception: {}", response.getException().toString());
-                    return;
-                }
+    private void postHeldState(String itemName, JablotronUpdatePolicy policy) {
+        if (itemPolicies.get(itemName) != policy || eventPublisher == null || itemRegistry == null) {
+            return;
+        }
+        String type = getItemSection(itemName);
+        if ((pendingStates != null && (isSection(type) || type.equals("armstate"))) || type.equals(pendingPG)) {
+            //the policy is evaluated again once the command is confirmed or rolled back
+            return;
+        }
 
-                if (response.getResponseCode() != 200 || !response.isOKStatus()) {
-                    return;
-                }
+        State oldState;
+        try {
+            oldState = itemRegistry.getItem(itemName).getState();
+        } catch (ItemNotFoundException e) {
+            logger.error("Item not found: {}", e.toString());
+            oldState = null;
+        }
+        synchronized (policy) {
+            State heldState = policy.takeHeldState(oldState, System.currentTimeMillis());
+            if (heldState != null) {
+                logger.debug("Posting held back state {} of item {}", heldState, itemName);
+                eventPublisher.postUpdate(itemName, heldState);
+            }
+            scheduleHeldPost(itemName, policy);
+        }
+    }
 
-                if (response.getWidgetsCount() == 0) {
-                    logger.error("Cannot found any jablotron device");
-                    return;
-                }
-                service = response.getServiceId(0);
+    /**
+     * @return the update policy configured for the item name or its binding, null for the default one
+     */
+    private JablotronUpdatePolicy getUpdatePolicy(String itemName, String type) {
+        Map<String, JablotronUpdatePolicy> templates = policyTemplates;
+        if (templates.isEmpty()) {
+            return null;
+        }
 
-                //service request
-                url = response.getServiceUrl(0);
-                if (!services.contains(service)) {
-                    services.add(service);
-                    logger.info("Found Jablotron service: {} id: {}", response.getServiceName(0), service);
-                }
-                cookieUrl = new URL(url);
-                connection = (HttpsURLConnection) cookieUrl.openConnection();
-                connection.setRequestMethod("GET");
-                connection.setRequestProperty("Referer", JABLOTRON_URL);
-                connection.setRequestProperty("Cookie", session);
-                connection.setRequestProperty("Upgrade-Insecure-Requests", "1");
-                setConnectionDefaults(connection);
-
-                if (connection.getResponseCode() == 200) {
-                    logger.debug("Successfully logged to Jablotron cloud!");
-                } else {
-                    logger.error("Cannot log in to Jablotron cloud!");
-                }
+        JablotronUpdatePolicy policy = itemPolicies.get(itemName);
+        if (policy == null) {
+            JablotronUpdatePolicy template = getPolicyTemplate(templates, itemName, type);
+            if (template == null) {
+                return null;
             }
-
-        } catch (MalformedURLException e) {
-            logger.error("The URL '{}' is malformed: {}", url, e.toString());
-        } catch (Exception e) {
-            logger.error("Cannot get Jablotron login cookie: {}", e.toString());
+            itemPolicies.putIfAbsent(itemName, template.copy());
+            policy = itemPolicies.get(itemName);
         }
+        return policy;
     }
 
-    private String getBrowserTimestamp() {
-        return "_=" + System.currentTimeMillis();
+    private JablotronUpdatePolicy getPolicyTemplate(Map<String, JablotronUpdatePolicy> templates, String itemName, String type) {
+        return templates.containsKey(itemName) ? templates.get(itemName) : templates.get(type);
     }
 
-    private void setConnectionDefaults(HttpsURLConnection connection) {
-        connection.setInstanceFollowRedirects(false);
-        connection.setRequestProperty("User-Agent", AGENT);
-        connection.setRequestProperty("Accept-Language", "cs-CZ");
-        connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
-        connection.setUseCaches(false);
+    /*
+    private int randomWithRange(int min, int max) {
+        int range = (max - min) + 1;
+        return (int) (Math.random() * range) + min;
+    }*/
+
+
+    private void login() {
+        stavA = 0;
+        stavB = 0;
+        stavABC = 0;
+        stavPGX = 0;
+        stavPGY = 0;
+
+        if (!session.login()) {
+            setBackoff();
+        }
     }
 
     /**
@@ -537,55 +1085,195 @@ public class JablotronBinding extends AbstractActiveBinding<JablotronBindingProv
         // event bus goes here. This method is only called if one of the
         // BindingProviders provide a binding for the given 'itemName'.
         logger.debug("internalReceiveCommand({},{}) is called!", itemName, command);
-        if (!(command instanceof StringType)) {
+        String section = getItemSection(itemName);
+        JablotronLease currentLease = lease;
+        if (currentLease != null && !currentLease.isHolder()) {
+            //only the lease holder may log in to the cloud
+            logger.warn("Not holding the Jablotron lease, ignoring command {} for {}", command, itemName);
             return;
         }
-
-        /*
-        String section = getItemSection(itemName);
-        if (section.startsWith("PG")) {
-            logger.error("Controlling of PGX/Y outputs is not supported!");
+        if (command instanceof OnOffType && (section.equals("PGX") || section.equals("PGY"))) {
+            switchPG(section, command.equals(OnOffType.ON));
             return;
-        }*/
-        int status = 0;
-        int result = 0;
+        }
+        if (!(command instanceof StringType) || !"code".equals(section)) {
+            return;
+        }
+
+        // several codes separated by comma or whitespace are sent within one session
+        String[] codes = command.toString().trim().split("[,;\\s]+");
 
         synchronized (session) {
             try {
-                login();
-                if (!updateAlarmStatus()) {
-                    logger.error("Cannot send user code due to alarm status!");
+                if (!prepareControl("send user code")) {
                     return;
                 }
-                while (controlDisabled) {
-                    logger.debug("Waiting for control enabling...");
-                    Thread.sleep(1000);
+
+                //the batch stops at the first code the alarm does not accept
+                int status = 0;
+                boolean rejected = false;
+                List<String> accepted = new ArrayList<>();
+                for (String code : codes) {
+                    if (code.isEmpty()) {
+                        continue;
+                    }
+                    JablotronResponse response = sendCode(code);
+                    if (response == null) {
+                        rejected = true;
+                        break;
+                    }
+                    handleJablotronResult(response);
+                    status = response.getJablotronStatusCode();
+                    if (status != 200) {
+                        break;
+                    }
+                    if (response.getJablotronResult() != 1) {
+                        rejected = true;
+                        break;
+                    }
+                    accepted.add(code);
+                }
+
+                if (rejected) {
+                    //nothing is predicted unless the whole batch has been accepted
+                    String error = "Code not accepted by the alarm after " + accepted.size() + " accepted code(s)";
+                    logger.error(error);
+                    publishState("error", new StringType(error));
                     updateAlarmStatus();
+                } else {
+                    handleHttpRequestStatus(status, getExpectedStates(accepted));
                 }
+            } catch (Exception e) {
+                logger.error("internalReceiveCommand exception: {}", e.toString());
+            } finally {
+                if (!keepSession) {
+                    logout();
+                }
+            }
+        }
+    }
+
+    /**
+     * Logs in if needed and reads the alarm status, waiting at most confirmTimeout while the
+     * control is disabled.
+     *
+     * @return true if the session is active and a control request can be sent
+     */
+    private boolean prepareControl(String action) throws InterruptedException {
+        if (!session.isLoggedIn()) {
+            login();
+            if (!session.isLoggedIn()) {
+                logger.error("Cannot {}, login failed", action);
+                return false;
+            }
+        }
+        if (!updateAlarmStatus()) {
+            logger.error("Cannot {} due to alarm status!", action);
+            return false;
+        }
+        long deadline = System.currentTimeMillis() + confirmTimeout;
+        while (state == JablotronSessionState.CONTROL_DISABLED) {
+            if (System.currentTimeMillis() >= deadline) {
+                logger.error("Cannot {}, control has not been enabled within {} ms", action, confirmTimeout);
+                return false;
+            }
+            logger.debug("Waiting for control enabling...");
+            Thread.sleep(Math.min(1000, confirmTimeout));
+            updateAlarmStatus();
+        }
+        if (state != JablotronSessionState.ACTIVE) {
+            logger.error("Cannot {} in state {}", action, state);
+            return false;
+        }
+        return true;
+    }
 
-                JablotronResponse response = sendUserCode("");
+    /**
+     * Switches a PG output by a single control request on the current session and polls the
+     * status until the panel confirms it. The item keeps its auto-updated state meanwhile and
+     * gets the real one published afterwards.
+     */
+    private void switchPG(String section, boolean on) {
+        final int pg = section.equals("PGX") ? 1 : 2;
+
+        synchronized (session) {
+            //the switch item keeps its auto-updated state until the output is confirmed or refused
+            pendingPG = section;
+            try {
+                if (!prepareControl("switch " + section)) {
+                    return;
+                }
+                JablotronResponse response = session.sendPGControl(pg, on);
+                if (response != null && response.isNoSessionStatus()) {
+                    //the session has expired meanwhile
+                    login();
+                    if (!session.isLoggedIn()) {
+                        logger.error("Cannot switch {}, login failed", section);
+                        return;
+                    }
+                    response = session.sendPGControl(pg, on);
+                }
                 if (response == null) {
                     return;
                 }
+                if (!response.isOKStatus()) {
+                    logger.error("Cannot switch {}, received status: {}", section, response.getJablotronStatusCode());
+                    return;
+                }
+                handleJablotronResult(response);
+                if (response.getJablotronResult() != 1) {
+                    return;
+                }
 
-                status = response.getJablotronStatusCode();
-                result = response.getJablotronResult();
-                if (status == 200 && result == 4) {
-                    logger.debug("Sending user code: {}", command.toString());
-                    response = sendUserCode(command.toString());
+                final int expected = on ? 1 : 0;
+                if (pollUntilConfirmed(new BooleanSupplier() {
+                    @Override
+                    public boolean getAsBoolean() {
+                        return ((pg == 1) ? stavPGX : stavPGY) == expected;
+                    }
+                })) {
+                    publishState("error", new StringType(""));
                 } else {
-                    logger.warn("Received unknown status: {}", status);
+                    String error = section + " not switched " + (on ? "ON" : "OFF") + ", alarm reports "
+                            + ((pg == 1) ? stavPGX : stavPGY) + " in state " + state;
+                    logger.error(error);
+                    publishState("error", new StringType(error));
                 }
-                handleJablotronResult(response);
-                handleHttpRequestStatus(response.getJablotronStatusCode());
             } catch (Exception e) {
-                logger.error("internalReceiveCommand exception: {}", e.toString());
+                logger.error("switchPG exception: {}", e.toString());
             } finally {
-                logout();
+                pendingPG = null;
+                if (lastStatus != null) {
+                    publishItems(lastStatus);
+                }
+                if (!keepSession) {
+                    logout();
+                }
             }
         }
     }
 
+    private JablotronResponse sendCode(String code) {
+        JablotronResponse response = session.sendUserCode("");
+        if (response == null) {
+            return null;
+        }
+
+        int status = response.getJablotronStatusCode();
+        int result = response.getJablotronResult();
+        if (status != 200) {
+            //handled by the caller like a status of the code itself
+            logger.warn("Received unknown status: {}", status);
+            return response;
+        }
+        if (result != 4) {
+            logger.error("Cannot enable the keypad control, received result: {}", result);
+            return null;
+        }
+        logger.debug("Sending user code: {}", code);
+        return session.sendUserCode(code);
+    }
+
     private void handleJablotronResult(JablotronResponse response) {
         int result = response.getJablotronResult();
         if (result != 1) {
@@ -596,12 +1284,35 @@ public class JablotronBinding extends AbstractActiveBinding<JablotronBindingProv
         }
     }
 
-    private void handleHttpRequestStatus(int status) throws InterruptedException {
+    /**
+     * @return section states expected after the accepted codes, null if they cannot be predicted
+     */
+    private int[] getExpectedStates(List<String> codes) {
+        int[] expected = null;
+        for (String code : codes) {
+            int[] states = codeStates.get(code);
+            if (states == null) {
+                //unknown code, the result cannot be predicted
+                return null;
+            }
+            if (expected == null) {
+                expected = new int[]{stavA, stavB, stavABC};
+            }
+            boolean disarm = states[0] == 0 && states[1] == 0 && states[2] == 0;
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = disarm ? 0 : expected[i] | states[i];
+            }
+        }
+        return expected;
+    }
+
+    private void handleHttpRequestStatus(int status, int[] expected) throws InterruptedException {
         switch (status) {
             case 0:
                 logout();
                 break;
             case 201:
+                setState(JablotronSessionState.BUSY, System.currentTimeMillis() + BUSY_RETRY);
                 logout();
                 break;
             case 300:
@@ -611,15 +1322,118 @@ public class JablotronBinding extends AbstractActiveBinding<JablotronBindingProv
                 login();
                 break;
             case 200:
-                updateAlarmStatus();
-                Thread.sleep(8000);
-                updateAlarmStatus();
+                confirmCommand(expected);
                 break;
             default:
                 logger.error("Unknown status code received: {}", status);
         }
     }
 
+    /**
+     * Publishes the expected section states right away and polls the status in short intervals
+     * until the panel confirms them. Polling stops as soon as the session leaves the active states.
+     * Unless the states are confirmed, the last status received from the panel is published again,
+     * which is the status read before the command if none could be read since, and the error item
+     * is updated. Without expected states the polling just waits for any section or PG change.
+     */
+    private void confirmCommand(final int[] expected) throws InterruptedException {
+        final int[] before = getStates();
+        if (expected != null) {
+            pendingStates = expected;
+            publishState("A", (expected[0] == 1) ? OnOffType.ON : OnOffType.OFF);
+            publishState("B", (expected[1] == 1) ? OnOffType.ON : OnOffType.OFF);
+            publishState("ABC", (expected[2] == 1) ? OnOffType.ON : OnOffType.OFF);
+            publishState("armstate", new StringType(getArmState(expected[0], expected[1], expected[2])));
+            publishState("pending", OnOffType.ON);
+        }
+
+        boolean confirmed;
+        JablotronResponse previousStatus = lastStatus;
+        try {
+            confirmed = pollUntilConfirmed(new BooleanSupplier() {
+                @Override
+                public boolean getAsBoolean() {
+                    if (expected != null) {
+                        return stavA == expected[0] && stavB == expected[1] && stavABC == expected[2];
+                    }
+                    return !Arrays.equals(before, getStates());
+                }
+            });
+        } finally {
+            if (expected != null) {
+                pendingStates = null;
+                publishState("pending", OnOffType.OFF);
+                if (lastStatus != null) {
+                    publishItems(lastStatus);
+                }
+            }
+        }
+
+        if (expected == null) {
+            return;
+        }
+        if (confirmed) {
+            publishState("error", new StringType(""));
+        } else {
+            String error = (lastStatus != previousStatus)
+                    ? "Command not confirmed, expected A=" + expected[0] + " B=" + expected[1] + " ABC=" + expected[2]
+                    + " but alarm reports A=" + stavA + " B=" + stavB + " ABC=" + stavABC
+                    : "Command not confirmed, the alarm status could not be read in state " + state;
+            logger.error(error);
+            publishState("error", new StringType(error));
+        }
+    }
+
+    /**
+     * Polls the status every confirmInterval until the confirmation holds, confirmTimeout expires
+     * or the session leaves the active states.
+     *
+     * @return true if confirmed
+     */
+    private boolean pollUntilConfirmed(BooleanSupplier confirmation) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + confirmTimeout;
+        while (System.currentTimeMillis() < deadline) {
+            Thread.sleep(confirmInterval);
+            if (updateAlarmStatus()) {
+                if (confirmation.getAsBoolean()) {
+                    return true;
+                }
+            } else if (state != JablotronSessionState.ACTIVE && state != JablotronSessionState.CONTROL_DISABLED) {
+                logger.debug("Stopping command confirmation in state {}", state);
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private int[] getStates() {
+        return new int[]{stavA, stavB, stavABC, stavPGX, stavPGY};
+    }
+
+    /**
+     * @return armed if all sections are armed, partial if some of them, disarmed otherwise
+     */
+    private String getArmState(int a, int b, int abc) {
+        if (a == 1 && b == 1 && abc == 1) {
+            return "armed";
+        }
+        return (a == 1 || b == 1 || abc == 1) ? "partial" : "disarmed";
+    }
+
+    private boolean isSection(String type) {
+        return type.equals("A") || type.equals("B") || type.equals("ABC");
+    }
+
+    private void publishState(String section, State state) {
+        for (final JablotronBindingProvider provider : providers) {
+            for (final String itemName : provider.getItemNames()) {
+                if (section.equals(provider.getSection(itemName))) {
+                    eventPublisher.postUpdate(itemName, state);
+                }
+            }
+        }
+    }
+
     private String getItemSection(String itemName) {
         for (final JablotronBindingProvider provider : providers) {
             if (provider.getItemNames().contains(itemName)) {
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.jablotron.internal;
+
+import com.google.gson.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link JablotronTransport} recording every exchange of a delegate transport to a file,
+ * one JSON object per line. Credentials, keypad codes and cookies are redacted, the
+ * browser timestamp is stripped from urls so recordings can be replayed by
+ * {@link JablotronReplayTransport}.
+ *
+ * @author Ondrej Pecta
+ * @since 1.12.0
+ */
+public class JablotronCaptureTransport implements JablotronTransport {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(JablotronCaptureTransport.class);
+
+    static final String REDACTED = "***";
+
+    private final JablotronTransport transport;
+    private final String fileName;
+    private Writer writer;
+
+    public JablotronCaptureTransport(JablotronTransport transport, String fileName) throws IOException {
+        this.transport = transport;
+        this.fileName = fileName;
+        this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName, true), StandardCharsets.UTF_8));
+        logger.info("Capturing Jablonet traffic to {}", fileName);
+    }
+
+    @Override
+    public JablotronResponse sendGet(String url, String referer, String cookie, boolean ajax) {
+        JablotronResponse response = transport.sendGet(url, referer, cookie, ajax);
+        record("GET", url, "", response);
+        return response;
+    }
+
+    @Override
+    public JablotronResponse sendPost(String url, String referer, String cookie, String urlParameters) {
+        JablotronResponse response = transport.sendPost(url, referer, cookie, urlParameters);
+        record("POST", url, urlParameters, response);
+        return response;
+    }
+
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.error("Cannot close capture file {}: {}", fileName, e.toString());
+        }
+        writer = null;
+    }
+
+    private synchronized void record(String method, String url, String urlParameters, JablotronResponse response) {
+        if (writer == null) {
+            return;
+        }
+
+        JsonObject record = new JsonObject();
+        record.addProperty("time", System.currentTimeMillis());
+        record.addProperty("method", method);
+        record.addProperty("url", stripTimestamp(url));
+        record.addProperty("request", redactParameters(urlParameters));
+        if (response.getException() != null && response.getResponse() == null) {
+            record.addProperty("error", response.getException().toString());
+        }
+        record.addProperty("code", response.getResponseCode());
+        if (response.getCookie() != null && !response.getCookie().isEmpty()) {
+            int eq = response.getCookie().indexOf('=');
+            record.addProperty("cookie", response.getCookie().substring(0, eq + 1) + REDACTED);
+        }
+        if (response.getResponse() != null) {
+            record.addProperty("body", response.getResponse());
+        }
+
+        try {
+            writer.write(record.toString());
+            writer.write('\n');
+            writer.flush();
+        } catch (IOException e) {
+            logger.error("Cannot write capture file {}: {}", fileName, e.toString());
+        }
+    }
+
+    static String stripTimestamp(String url) {
+        return url.replaceAll("([?&])_=\\d+&?", "$1").replaceAll("[?&]$", "");
+    }
+
+    static String redactParameters(String urlParameters) {
+        if (urlParameters.isEmpty()) {
+            return urlParameters;
+        }
+
+        StringBuilder redacted = new StringBuilder();
+        for (String pair : urlParameters.split("&")) {
+            if (redacted.length() > 0) {
+                redacted.append('&');
+            }
+            int eq = pair.indexOf('=');
+            String key = (eq < 0) ? pair : pair.substring(0, eq);
+            String value = (eq < 0) ? "" : pair.substring(eq + 1);
+            if (!value.isEmpty() && (key.equals("login") || key.equals("heslo") || key.equals("code"))) {
+                value = REDACTED;
+            }
+            redacted.append(key).append('=').append(value);
+        }
+        return redacted.toString();
+    }
+}
@@ -36,10 +36,10 @@ public class JablotronGenericBindingProvider extends AbstractGenericBindingProvi
 	 */
 	@Override
 	public void validateItemType(Item item, String bindingConfig) throws BindingConfigParseException {
-		if (!(item instanceof SwitchItem || item instanceof DateTimeItem || item instanceof ContactItem || item instanceof StringItem)) {
+		if (!(item instanceof SwitchItem || item instanceof DateTimeItem || item instanceof ContactItem || item instanceof StringItem || item instanceof NumberItem)) {
 			throw new BindingConfigParseException("item '" + item.getName()
 					+ "' is of type '" + item.getClass().getSimpleName()
-					+ "', only String-, Switch-, Contact- and DateTimeItems are allowed - please check your *.items configuration");
+					+ "', only String-, Switch-, Contact-, Number- and DateTimeItems are allowed - please check your *.items configuration");
 		}
 	}
 	
@@ -52,6 +52,14 @@ public class JablotronGenericBindingProvider extends AbstractGenericBindingProvi
 		JablotronBindingConfig config = new JablotronBindingConfig(bindingConfig);
 		
 		//parse bindingconfig here ...
+		if (bindingConfig.startsWith("stats:")) {
+			String[] parts = bindingConfig.split(":");
+			if (parts.length != 3 || !parts[1].matches("A|B|ABC|PGX|PGY|alarm") || !JablotronStatistics.isMetric(parts[2])) {
+				throw new BindingConfigParseException("item '" + item.getName()
+						+ "' has invalid statistics binding '" + bindingConfig
+						+ "', expected stats:<A|B|ABC|PGX|PGY|alarm>:<armedToday|armedWeek|countToday|countWeek|transitionsToday|transitionsWeek>");
+			}
+		}
 		
 		addBindingConfig(item, config);		
 	}
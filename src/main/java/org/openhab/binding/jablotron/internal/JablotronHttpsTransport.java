@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.jablotron.internal;
+
+import javax.net.ssl.HttpsURLConnection;
+import java.io.DataOutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Default {@link JablotronTransport} talking to the real Jablonet cloud.
+ *
+ * @author Ondrej Pecta
+ * @since 1.12.0
+ */
+public class JablotronHttpsTransport implements JablotronTransport {
+
+    private final String AGENT = "Mozilla/5.0 (Windows NT 6.1; WOW64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/54.0.2840.59 Safari/537.36";
+
+    @Override
+    public JablotronResponse sendGet(String url, String referer, String cookie, boolean ajax) {
+        try {
+            URL cookieUrl = new URL(url);
+            HttpsURLConnection connection = (HttpsURLConnection) cookieUrl.openConnection();
+            connection.setRequestMethod("GET");
+            connection.setRequestProperty("Referer", referer);
+            if (!cookie.isEmpty()) {
+                connection.setRequestProperty("Cookie", cookie);
+            }
+            if (ajax) {
+                connection.setRequestProperty("X-Requested-With", "XMLHttpRequest");
+            } else {
+                connection.setRequestProperty("Upgrade-Insecure-Requests", "1");
+            }
+            setConnectionDefaults(connection);
+
+            return new JablotronResponse(connection);
+        } catch (Exception e) {
+            return new JablotronResponse(e);
+        }
+    }
+
+    @Override
+    public JablotronResponse sendPost(String url, String referer, String cookie, String urlParameters) {
+        try {
+            byte[] postData = urlParameters.getBytes(StandardCharsets.UTF_8);
+            URL cookieUrl = new URL(url);
+            HttpsURLConnection connection = (HttpsURLConnection) cookieUrl.openConnection();
+            connection.setDoOutput(true);
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Referer", referer);
+            if (!cookie.isEmpty()) {
+                connection.setRequestProperty("Cookie", cookie);
+            }
+            connection.setRequestProperty("Content-Length", Integer.toString(postData.length));
+            connection.setRequestProperty("X-Requested-With", "XMLHttpRequest");
+            setConnectionDefaults(connection);
+            try (DataOutputStream wr = new DataOutputStream(connection.getOutputStream())) {
+                wr.write(postData);
+            }
+
+            return new JablotronResponse(connection);
+        } catch (Exception e) {
+            return new JablotronResponse(e);
+        }
+    }
+
+    private void setConnectionDefaults(HttpsURLConnection connection) {
+        connection.setInstanceFollowRedirects(false);
+        connection.setRequestProperty("User-Agent", AGENT);
+        connection.setRequestProperty("Accept-Language", "cs-CZ");
+        connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+        connection.setUseCaches(false);
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.jablotron.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * A lease on a directory shared by several openHAB nodes using the same Jablonet account.
+ * Only the lease holder talks to the cloud, it renews the lease by heartbeats and writes
+ * each alarm status to a snapshot file the other nodes publish from. When the holder stops
+ * renewing, the lease expires and the next node renewing takes over. Node clocks are
+ * expected to be synchronized.
+ *
+ * @author Ondrej Pecta
+ * @since 1.12.0
+ */
+public class JablotronLease {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(JablotronLease.class);
+
+    private final Path leaseFile;
+    private final Path lockFile;
+    private final Path snapshotFile;
+    private final String nodeId;
+    private final long timeout;
+
+    private boolean holder = false;
+    private long expiresAt = 0;
+    private String snapshot = null;
+
+    public JablotronLease(String directory, String account, String nodeId, long timeout) throws IOException {
+        Path dir = Paths.get(directory);
+        Files.createDirectories(dir);
+        String name = "jablotron-" + account.replaceAll("[^A-Za-z0-9]", "_");
+        this.leaseFile = dir.resolve(name + ".lease");
+        this.lockFile = dir.resolve(name + ".lock");
+        this.snapshotFile = dir.resolve(name + ".snapshot");
+        this.nodeId = nodeId;
+        this.timeout = timeout;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return true if this node holds a lease which has not expired yet
+     */
+    public synchronized boolean isHolder() {
+        return holder && System.currentTimeMillis() < expiresAt;
+    }
+
+    /**
+     * Renews the lease held by this node or takes over an expired one.
+     *
+     * @return true if this node is the lease holder
+     */
+    public synchronized boolean renew() {
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                long now = System.currentTimeMillis();
+                String owner = null;
+                long ownerExpiresAt = 0;
+                if (Files.exists(leaseFile)) {
+                    List<String> lines = Files.readAllLines(leaseFile, StandardCharsets.UTF_8);
+                    if (lines.size() >= 2) {
+                        owner = lines.get(0);
+                        ownerExpiresAt = Long.parseLong(lines.get(1).trim());
+                    }
+                }
+
+                if (owner == null || owner.equals(nodeId) || ownerExpiresAt <= now) {
+                    if (!nodeId.equals(owner) || !holder) {
+                        logger.info("Node {} holds the Jablotron lease now", nodeId);
+                    }
+                    expiresAt = now + timeout;
+                    Files.write(leaseFile, (nodeId + "\n" + expiresAt + "\n").getBytes(StandardCharsets.UTF_8));
+                    holder = true;
+                } else {
+                    if (holder) {
+                        logger.warn("Node {} lost the Jablotron lease to {}", nodeId, owner);
+                    }
+                    holder = false;
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (Exception e) {
+            logger.error("Cannot renew Jablotron lease {}: {}", leaseFile, e.toString());
+            holder = false;
+        }
+        return holder;
+    }
+
+    /**
+     * Gives up the lease so another node can take over without waiting for the expiration.
+     */
+    public synchronized void release() {
+        if (!holder) {
+            return;
+        }
+        holder = false;
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                List<String> lines = Files.exists(leaseFile) ? Files.readAllLines(leaseFile, StandardCharsets.UTF_8) : null;
+                if (lines != null && !lines.isEmpty() && lines.get(0).equals(nodeId)) {
+                    Files.delete(leaseFile);
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (Exception e) {
+            logger.error("Cannot release Jablotron lease {}: {}", leaseFile, e.toString());
+        }
+    }
+
+    public void writeSnapshot(String status) {
+        try {
+            Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + "." + nodeId.hashCode());
+            Files.write(tmp, status.getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            logger.error("Cannot write Jablotron snapshot {}: {}", snapshotFile, e.toString());
+        }
+    }
+
+    /**
+     * @return the status written by the lease holder, or null if it has not changed since the last call
+     */
+    public synchronized String readSnapshotIfChanged() {
+        try {
+            if (!Files.exists(snapshotFile)) {
+                return null;
+            }
+            String status = new String(Files.readAllBytes(snapshotFile), StandardCharsets.UTF_8);
+            if (status.equals(snapshot)) {
+                return null;
+            }
+            snapshot = status;
+            return status;
+        } catch (Exception e) {
+            logger.error("Cannot read Jablotron snapshot {}: {}", snapshotFile, e.toString());
+            return null;
+        }
+    }
+}
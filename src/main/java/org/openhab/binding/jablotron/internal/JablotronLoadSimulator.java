@@ -0,0 +1,280 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.jablotron.internal;
+
+import org.openhab.core.events.EventPublisher;
+import org.openhab.core.items.GenericItem;
+import org.openhab.core.items.ItemNotFoundException;
+import org.openhab.core.items.ItemRegistry;
+import org.openhab.core.library.items.ContactItem;
+import org.openhab.core.library.items.DateTimeItem;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.items.StringItem;
+import org.openhab.core.library.items.SwitchItem;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.State;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Standalone load test running one {@link JablotronBinding} per installation against a
+ * {@link JablotronSimulatedCloud}. Every installation has its own binding provider, item
+ * registry and event publisher with the items of the README example, so polls and commands
+ * go through the real session states, command confirmation, update policies and item updates.
+ * Run it with the bundle classes, the openHAB core classes, gson and an slf4j binding on the
+ * classpath, parameters are given as key=value pairs:
+ * <pre>
+ * accounts=200 widgets=2 cycles=20 threads=32 latency=20 change=0.1 busy=0.02 expire=0.02 commands=0.05
+ * </pre>
+ * {@code keepSession}, {@code confirmInterval} and {@code confirmTimeout} are passed to the
+ * bindings. With {@code replay=<file>} the installations are served from a capture recording
+ * instead, which measures the parsing cost of real payloads.
+ *
+ * @author Ondrej Pecta
+ * @since 1.12.0
+ */
+public class JablotronLoadSimulator {
+
+    private static final String[][] ITEMS = {
+            {"A", "Switch"}, {"B", "Switch"}, {"ABC", "Switch"}, {"PGX", "Switch"}, {"PGY", "Switch"},
+            {"armstate", "String"}, {"alarm", "Contact"}, {"state", "String"}, {"lasteventtime", "DateTime"},
+            {"pending", "Switch"}, {"error", "String"}, {"code", "String"}, {"stats:A:armedToday", "Number"}};
+
+    private final int accounts;
+    private final int cycles;
+    private final int threads;
+    private final double commandRate;
+    private final Map<String, Object> configuration = new HashMap<>();
+    private final JablotronSimulatedCloud cloud;
+    private final JablotronReplayTransport replay;
+
+    private final AtomicLong commands = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+
+    public JablotronLoadSimulator(Map<String, String> params) throws Exception {
+        accounts = Integer.parseInt(get(params, "accounts", "200"));
+        cycles = Integer.parseInt(get(params, "cycles", "20"));
+        threads = Integer.parseInt(get(params, "threads", "32"));
+        commandRate = Double.parseDouble(get(params, "commands", "0.05"));
+        cloud = new JablotronSimulatedCloud(Integer.parseInt(get(params, "widgets", "2")),
+                Double.parseDouble(get(params, "change", "0.1")),
+                Double.parseDouble(get(params, "busy", "0.02")),
+                Double.parseDouble(get(params, "expire", "0.02")),
+                Long.parseLong(get(params, "latency", "20")));
+        replay = params.containsKey("replay") ? new JablotronReplayTransport(params.get("replay"), true) : null;
+
+        //the refresh thread of every binding polls once, the cycles are driven from here
+        configuration.put("refresh", "86400000");
+        configuration.put("keepSession", get(params, "keepSession", "false"));
+        configuration.put("confirmInterval", get(params, "confirmInterval", "50"));
+        configuration.put("confirmTimeout", get(params, "confirmTimeout", "2000"));
+        configuration.put("armACode", "1111");
+        configuration.put("disarmCode", "5555");
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> params = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                params.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+        new JablotronLoadSimulator(params).run();
+        //the refresh threads of the bindings are not daemons
+        System.exit(0);
+    }
+
+    public void run() throws Exception {
+        //the cloud side and the result arrays are allocated before measuring the installations
+        for (int i = 0; i < accounts; i++) {
+            cloud.addAccount("user" + i + "@example.com", "secret" + i);
+        }
+        long[] latencies = new long[accounts * cycles];
+        List<Future<long[]>> results = new ArrayList<>(accounts);
+
+        long heapBefore = usedHeap();
+        List<Installation> installations = new ArrayList<>(accounts);
+        for (int i = 0; i < accounts; i++) {
+            installations.add(new Installation("user" + i + "@example.com", "secret" + i));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        for (final Installation installation : installations) {
+            results.add(executor.submit(() -> runCycles(installation)));
+        }
+
+        int pos = 0;
+        for (Future<long[]> result : results) {
+            long[] cycleLatencies = result.get();
+            System.arraycopy(cycleLatencies, 0, latencies, pos, cycleLatencies.length);
+            pos += cycleLatencies.length;
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        results.clear();
+        long heapAfter = usedHeap();
+
+        Map<String, Integer> states = new TreeMap<>();
+        for (Installation installation : installations) {
+            String state = String.valueOf(installation.items.get("state").getState());
+            states.put(state, states.containsKey(state) ? states.get(state) + 1 : 1);
+            installation.binding.deactivate(0);
+            installation.binding.deactivate();
+        }
+
+        Arrays.sort(latencies);
+        double seconds = elapsed / 1e9;
+        System.out.printf("installations: %d, cycles: %d, threads: %d, elapsed: %.2f s%n", accounts, cycles, threads, seconds);
+        System.out.printf("commands: %d, item updates: %d, final session states: %s%n", commands.get(),
+                updates.get(), states);
+        if (replay == null) {
+            System.out.printf("requests: %d, injected 201: %d, injected 800: %d%n", cloud.requests.get(),
+                    cloud.busyInjected.get(), cloud.expireInjected.get());
+            System.out.printf("throughput: %.1f cycles/s, %.1f requests/s%n", latencies.length / seconds,
+                    cloud.requests.get() / seconds);
+        } else {
+            System.out.printf("replayed records: %d, throughput: %.1f cycles/s%n", replay.size(),
+                    latencies.length / seconds);
+        }
+        System.out.printf("cycle latency ms p50: %.1f p90: %.1f p99: %.1f max: %.1f%n", percentile(latencies, 0.5),
+                percentile(latencies, 0.9), percentile(latencies, 0.99), latencies[latencies.length - 1] / 1e6);
+        System.out.printf("memory per installation: %d bytes%n", Math.max(0, heapAfter - heapBefore) / installations.size());
+    }
+
+    /**
+     * One installation polling like its refresh thread and receiving commands like from the
+     * event bus, a PG switch is auto-updated first as openHAB does for Switch items.
+     */
+    private long[] runCycles(Installation installation) {
+        long[] latencies = new long[cycles];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < cycles; i++) {
+            long start = System.nanoTime();
+            installation.binding.execute();
+            if (random.nextDouble() < commandRate) {
+                commands.incrementAndGet();
+                if (random.nextInt(3) == 0) {
+                    OnOffType command = random.nextBoolean() ? OnOffType.ON : OnOffType.OFF;
+                    installation.items.get("PGX").setState(command);
+                    installation.binding.receiveCommand("PGX", command);
+                } else {
+                    installation.binding.receiveCommand("code", new StringType(random.nextBoolean() ? "1111" : "5555"));
+                }
+            }
+            latencies[i] = System.nanoTime() - start;
+        }
+        return latencies;
+    }
+
+    private double percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static String get(Map<String, String> params, String key, String defaultValue) {
+        String value = params.get(key);
+        return (value == null) ? defaultValue : value;
+    }
+
+    /**
+     * A binding wired to its own items the way the openHAB runtime does it.
+     */
+    private class Installation implements EventPublisher {
+        private final Map<String, GenericItem> items = new HashMap<>();
+        private final JablotronBinding binding = new JablotronBinding(replay == null ? cloud : replay);
+
+        Installation(String email, String password) throws Exception {
+            JablotronGenericBindingProvider provider = new JablotronGenericBindingProvider();
+            for (String[] item : ITEMS) {
+                GenericItem genericItem = createItem(item[0], item[1]);
+                items.put(item[0], genericItem);
+                provider.processBindingConfiguration("simulator", genericItem, item[0]);
+            }
+
+            binding.setEventPublisher(this);
+            binding.setItemRegistry((ItemRegistry) Proxy.newProxyInstance(ItemRegistry.class.getClassLoader(),
+                    new Class<?>[]{ItemRegistry.class}, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            if (method.getName().equals("getItem")) {
+                                GenericItem item = items.get(args[0]);
+                                if (item == null) {
+                                    throw new ItemNotFoundException((String) args[0]);
+                                }
+                                return item;
+                            }
+                            return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+                        }
+                    }));
+            binding.addBindingProvider(provider);
+
+            Map<String, Object> installationConfiguration = new HashMap<>(configuration);
+            installationConfiguration.put("email", email);
+            installationConfiguration.put("password", password);
+            binding.activate(null, installationConfiguration);
+        }
+
+        private GenericItem createItem(String name, String type) {
+            switch (type) {
+                case "Switch":
+                    return new SwitchItem(name);
+                case "Contact":
+                    return new ContactItem(name);
+                case "DateTime":
+                    return new DateTimeItem(name);
+                case "Number":
+                    return new NumberItem(name);
+                default:
+                    return new StringItem(name);
+            }
+        }
+
+        @Override
+        public void sendCommand(String itemName, Command command) {
+        }
+
+        @Override
+        public void postCommand(String itemName, Command command) {
+        }
+
+        @Override
+        public void postUpdate(String itemName, State newState) {
+            updates.incrementAndGet();
+            GenericItem item = items.get(itemName);
+            if (item != null) {
+                item.setState(newState);
+            }
+        }
+    }
+}
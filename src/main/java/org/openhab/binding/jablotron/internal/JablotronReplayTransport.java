@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.jablotron.internal;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link JablotronTransport} answering requests from a recording written by
+ * {@link JablotronCaptureTransport}. Requests are matched by method, url and redacted
+ * parameters and answered with the recorded responses in their original order.
+ *
+ * @author Ondrej Pecta
+ * @since 1.12.0
+ */
+public class JablotronReplayTransport implements JablotronTransport {
+
+    private final Map<String, List<JsonObject>> recordings = new HashMap<>();
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final boolean loop;
+
+    /**
+     * @param fileName recording to replay
+     * @param loop     start over when all recorded responses for a request were used
+     */
+    public JablotronReplayTransport(String fileName, boolean loop) throws IOException {
+        this.loop = loop;
+        JsonParser parser = new JsonParser();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(fileName), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                JsonObject record = parser.parse(line).getAsJsonObject();
+                String key = getKey(record.get("method").getAsString(), record.get("url").getAsString(),
+                        record.get("request").getAsString());
+                if (!recordings.containsKey(key)) {
+                    recordings.put(key, new ArrayList<JsonObject>());
+                }
+                recordings.get(key).add(record);
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (List<JsonObject> records : recordings.values()) {
+            size += records.size();
+        }
+        return size;
+    }
+
+    @Override
+    public JablotronResponse sendGet(String url, String referer, String cookie, boolean ajax) {
+        return replay(getKey("GET", JablotronCaptureTransport.stripTimestamp(url), ""));
+    }
+
+    @Override
+    public JablotronResponse sendPost(String url, String referer, String cookie, String urlParameters) {
+        return replay(getKey("POST", JablotronCaptureTransport.stripTimestamp(url),
+                JablotronCaptureTransport.redactParameters(urlParameters)));
+    }
+
+    private synchronized JablotronResponse replay(String key) {
+        List<JsonObject> records = recordings.get(key);
+        if (records == null) {
+            return new JablotronResponse(new IOException("No recorded response for " + key));
+        }
+
+        int position = positions.containsKey(key) ? positions.get(key) : 0;
+        if (position >= records.size()) {
+            if (!loop) {
+                return new JablotronResponse(new IOException("Recorded responses exhausted for " + key));
+            }
+            position = 0;
+        }
+        positions.put(key, position + 1);
+
+        JsonObject record = records.get(position);
+        if (record.has("error")) {
+            return new JablotronResponse(new IOException(record.get("error").getAsString()));
+        }
+        String body = record.has("body") ? record.get("body").getAsString() : "";
+        String cookie = record.has("cookie") ? record.get("cookie").getAsString() : "";
+        return new JablotronResponse(record.get("code").getAsInt(), body, cookie);
+    }
+
+    private String getKey(String method, String url, String request) {
+        return method + " " + url + " " + request;
+    }
+}
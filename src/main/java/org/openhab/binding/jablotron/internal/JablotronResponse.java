@@ -50,6 +50,17 @@ public class JablotronResponse {
 
     }
 
+    public JablotronResponse(int responseCode, String response, String cookie) {
+        this.responseCode = responseCode;
+        this.response = response;
+        this.cookie = cookie;
+        try {
+            json = parser.parse(response).getAsJsonObject();
+        } catch (Exception ex) {
+            this.exception = ex;
+        }
+    }
+
     public Exception getException() {
         return exception;
     }
@@ -159,13 +170,29 @@ public class JablotronResponse {
     }
 
     public Date getLastResponseTime() {
-        if (json.has("last_entry")) {
-            long lastEventTime = json.get("last_entry").getAsJsonObject().get("cid").getAsJsonObject().get("time").getAsLong();
-            return getZonedDateTime(lastEventTime);
+        JsonObject cid = getLastEntryCid();
+        if (cid != null && cid.has("time") && !cid.get("time").isJsonNull()) {
+            return getZonedDateTime(cid.get("time").getAsLong());
         } else
             return null;
     }
 
+    /**
+     * @return the event code of the last entry or -1 if not reported
+     */
+    public int getLastEventCode() {
+        JsonObject cid = getLastEntryCid();
+        return (cid != null && cid.has("code") && !cid.get("code").isJsonNull()) ? cid.get("code").getAsInt() : -1;
+    }
+
+    private JsonObject getLastEntryCid() {
+        if (json == null || !json.has("last_entry") || !json.get("last_entry").isJsonObject()) {
+            return null;
+        }
+        JsonObject lastEntry = json.get("last_entry").getAsJsonObject();
+        return (lastEntry.has("cid") && lastEntry.get("cid").isJsonObject()) ? lastEntry.get("cid").getAsJsonObject() : null;
+    }
+
     private Date getZonedDateTime(long lastEventTime) {
         Instant dt = Instant.ofEpochSecond(lastEventTime);
         ZonedDateTime zdt = ZonedDateTime.ofInstant(dt, ZoneId.of("Europe/Prague"));
@@ -0,0 +1,197 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.jablotron.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+
+/**
+ * A session of one Jablonet account. It knows the login/logout sequence and the
+ * OASIS status and control requests, but keeps no openHAB specific state so it can
+ * be driven outside of the binding as well.
+ *
+ * @author Ondrej Pecta
+ * @since 1.12.0
+ */
+public class JablotronSession {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(JablotronSession.class);
+
+    static final String JABLOTRON_URL = "https://www.jablonet.net/";
+    static final String SERVICE_URL = "app/oasis?service=";
+
+    private JablotronTransport transport;
+
+    private String email = "";
+    private String password = "";
+    private String session = "";
+    private String service;
+
+    private final ArrayList<String> services = new ArrayList<>();
+
+    public JablotronSession(JablotronTransport transport) {
+        this.transport = transport;
+    }
+
+    public synchronized void setTransport(JablotronTransport transport) {
+        this.transport = transport;
+    }
+
+    public synchronized void setCredentials(String email, String password) {
+        this.email = email;
+        this.password = password;
+    }
+
+    public synchronized boolean isLoggedIn() {
+        return !session.isEmpty();
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    public ArrayList<String> getServices() {
+        return services;
+    }
+
+    /**
+     * Forgets the session cookie without contacting the cloud.
+     */
+    public synchronized void invalidate() {
+        session = "";
+    }
+
+    public synchronized boolean login() {
+        String url = JABLOTRON_URL + "ajax/login.php";
+
+        try {
+            String urlParameters = "login=" + email + "&heslo=" + password + "&aStatus=200&loginType=Login";
+            JablotronResponse response = transport.sendPost(url, JABLOTRON_URL, "", urlParameters);
+            if (response.getException() != null) {
+                logger.error("JablotronResponse login exception: {}", response.getException().toString());
+                return false;
+            }
+
+            if (!response.isOKStatus())
+                return false;
+
+            //get cookie
+            session = response.getCookie();
+
+            //cloud request
+            url = JABLOTRON_URL + "ajax/widget-new.php?" + getBrowserTimestamp();
+            response = transport.sendGet(url, JABLOTRON_URL + "cloud", session, true);
+
+            if (response.getException() != null) {
+                logger.error("JablotronResponse widget exception: {}", response.getException().toString());
+                return false;
+            }
+
+            if (response.getResponseCode() != 200 || !response.isOKStatus()) {
+                return false;
+            }
+
+            if (response.getWidgetsCount() == 0) {
+                logger.error("Cannot found any jablotron device");
+                return false;
+            }
+            service = response.getServiceId(0);
+
+            //service request
+            url = response.getServiceUrl(0);
+            if (!services.contains(service)) {
+                services.add(service);
+                logger.info("Found Jablotron service: {} id: {}", response.getServiceName(0), service);
+            }
+            response = transport.sendGet(url, JABLOTRON_URL, session, false);
+
+            if (response.getResponseCode() == 200) {
+                logger.debug("Successfully logged to Jablotron cloud!");
+                return true;
+            } else {
+                logger.error("Cannot log in to Jablotron cloud!");
+            }
+        } catch (Exception e) {
+            logger.error("Cannot get Jablotron login cookie: {}", e.toString());
+        }
+        return false;
+    }
+
+    public synchronized void logout() {
+        String url = JABLOTRON_URL + "logout";
+        try {
+            transport.sendGet(url, JABLOTRON_URL + SERVICE_URL + service, session, false);
+        } finally {
+            session = "";
+        }
+    }
+
+    /**
+     * Reads the OASIS status, logging in again once if the cloud reports
+     * the session has expired (status 800).
+     *
+     * @return the status response, possibly holding an exception
+     */
+    public synchronized JablotronResponse requestStatus() {
+        JablotronResponse response = sendGetStatusRequest();
+        if (response.getException() != null) {
+            session = "";
+            return response;
+        }
+
+        if (response.getResponseCode() == 200 && response.isNoSessionStatus()) {
+            session = "";
+            login();
+            response = sendGetStatusRequest();
+        }
+        return response;
+    }
+
+    public synchronized JablotronResponse sendGetStatusRequest() {
+        String url = JABLOTRON_URL + "app/oasis/ajax/stav.php?" + getBrowserTimestamp();
+        JablotronResponse response = transport.sendGet(url, JABLOTRON_URL + SERVICE_URL + service, session, true);
+        if (response.getException() != null) {
+            logger.error("sendGetStatusRequest exception: {}", response.getException().toString());
+        }
+        return response;
+    }
+
+    public synchronized JablotronResponse sendUserCode(String code) {
+        return sendControlRequest("section=STATE&status=" + ((code.isEmpty()) ? "1" : "") + "&code=" + code);
+    }
+
+    /**
+     * Switches a PG output without a keypad code.
+     *
+     * @param pg 1 for PGX, 2 for PGY
+     * @param on requested output state
+     */
+    public synchronized JablotronResponse sendPGControl(int pg, boolean on) {
+        return sendControlRequest("section=PGM_" + pg + "&status=" + (on ? "1" : "0") + "&code=");
+    }
+
+    private JablotronResponse sendControlRequest(String urlParameters) {
+        String url = JABLOTRON_URL + "app/oasis/ajax/ovladani.php";
+
+        JablotronResponse response = transport.sendPost(url, JABLOTRON_URL + SERVICE_URL + service, session, urlParameters);
+        if (response.getException() != null) {
+            logger.error("sendUserCode exception: {}", response.getException().toString());
+            return null;
+        }
+        logger.debug("sendUserCode response: {}", response.getResponse());
+        return response;
+    }
+
+    private String getBrowserTimestamp() {
+        return "_=" + System.currentTimeMillis();
+    }
+}
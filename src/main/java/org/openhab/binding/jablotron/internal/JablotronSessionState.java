@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.jablotron.internal;
+
+/**
+ * Last known condition of the Jablonet service, deciding what the next poll does.
+ *
+ * @author Ondrej Pecta
+ * @since 1.12.0
+ */
+public enum JablotronSessionState {
+    //nothing known yet, next poll logs in
+    LOGGED_OUT,
+    //status read and control enabled
+    ACTIVE,
+    //status read but the panel does not accept codes yet
+    CONTROL_DISABLED,
+    //the panel is in service mode, only probed in long intervals
+    SERVICE_MODE,
+    //OASIS answered busy (201), retried after a short delay
+    BUSY,
+    //login or status request failed, retried with growing delays
+    BACKOFF;
+
+    /**
+     * @return true if polling in this state waits for a retry time
+     */
+    public boolean isDelayed() {
+        return this == SERVICE_MODE || this == BUSY || this == BACKOFF;
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.jablotron.internal;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory stand-in for the Jablonet cloud. It serves the login, widget, OASIS status
+ * and control endpoints for any number of accounts with several widgets each, changes
+ * section states at random and injects busy (201) and expired session (800) responses.
+ *
+ * @author Ondrej Pecta
+ * @since 1.12.0
+ */
+public class JablotronSimulatedCloud implements JablotronTransport {
+
+    private final int widgets;
+    private final double changeRate;
+    private final double busyRate;
+    private final double expireRate;
+    private final long latency;
+
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    private final Map<String, Widget> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong sessionCounter = new AtomicLong();
+
+    final AtomicLong requests = new AtomicLong();
+    final AtomicLong busyInjected = new AtomicLong();
+    final AtomicLong expireInjected = new AtomicLong();
+
+    /**
+     * @param widgets    number of widgets (installations) per account
+     * @param changeRate probability a status request sees a new section/PG state
+     * @param busyRate   probability of a 201 response to a status request
+     * @param expireRate probability of a 800 response to a status request
+     * @param latency    simulated round trip in milliseconds
+     */
+    public JablotronSimulatedCloud(int widgets, double changeRate, double busyRate, double expireRate, long latency) {
+        this.widgets = widgets;
+        this.changeRate = changeRate;
+        this.busyRate = busyRate;
+        this.expireRate = expireRate;
+        this.latency = latency;
+    }
+
+    public void addAccount(String email, String password) {
+        accounts.put(email, new Account(password, widgets, accounts.size() * widgets));
+    }
+
+    @Override
+    public JablotronResponse sendGet(String url, String referer, String cookie, boolean ajax) {
+        roundTrip();
+        String path = getPath(url);
+        if (path.startsWith("ajax/widget-new.php")) {
+            Account account = getAccount(cookie);
+            return (account == null) ? noSession() : ok(account.getWidgetJson(), "");
+        }
+        if (path.startsWith(JablotronSession.SERVICE_URL)) {
+            Account account = getAccount(cookie);
+            if (account == null) {
+                return new JablotronResponse(302, "", "");
+            }
+            Widget widget = account.find(path.substring(JablotronSession.SERVICE_URL.length()));
+            if (widget == null) {
+                return new JablotronResponse(404, "", "");
+            }
+            sessions.put(cookie, widget);
+            return new JablotronResponse(200, "<html></html>", "");
+        }
+        if (path.startsWith("app/oasis/ajax/stav.php")) {
+            Widget widget = sessions.get(cookie);
+            if (widget == null) {
+                return noSession();
+            }
+            Random random = ThreadLocalRandom.current();
+            if (random.nextDouble() < expireRate) {
+                expireInjected.incrementAndGet();
+                sessions.remove(cookie);
+                return noSession();
+            }
+            if (random.nextDouble() < busyRate) {
+                busyInjected.incrementAndGet();
+                return ok("{\"status\":201}", "");
+            }
+            return ok(widget.getStatusJson(random.nextDouble() < changeRate ? random : null), "");
+        }
+        if (path.startsWith("logout")) {
+            sessions.remove(cookie);
+            return new JablotronResponse(302, "", "");
+        }
+        return new JablotronResponse(404, "", "");
+    }
+
+    @Override
+    public JablotronResponse sendPost(String url, String referer, String cookie, String urlParameters) {
+        roundTrip();
+        String path = getPath(url);
+        Map<String, String> params = parseParameters(urlParameters);
+        if (path.startsWith("ajax/login.php")) {
+            Account account = accounts.get(params.get("login"));
+            if (account == null || !account.password.equals(params.get("heslo"))) {
+                return ok("{\"status\":300}", "");
+            }
+            String newSession = "PHPSESSID=sim" + sessionCounter.incrementAndGet();
+            sessions.put(newSession, account.widgets[0]);
+            return ok("{\"status\":200}", newSession);
+        }
+        if (path.startsWith("app/oasis/ajax/ovladani.php")) {
+            Widget widget = sessions.get(cookie);
+            if (widget == null) {
+                return noSession();
+            }
+            String section = params.get("section");
+            if (section != null && section.startsWith("PGM_")) {
+                widget.applyPG(Integer.parseInt(section.substring(4)) - 1, "1".equals(params.get("status")));
+                return ok("{\"status\":200,\"vysledek\":1}", "");
+            }
+            String code = params.get("code");
+            if (code == null || code.isEmpty()) {
+                return ok("{\"status\":200,\"vysledek\":4}", "");
+            }
+            widget.applyCode(code);
+            return ok("{\"status\":200,\"vysledek\":1}", "");
+        }
+        return new JablotronResponse(404, "", "");
+    }
+
+    private Account getAccount(String cookie) {
+        Widget widget = sessions.get(cookie);
+        return (widget == null) ? null : widget.account;
+    }
+
+    private JablotronResponse ok(String body, String cookie) {
+        return new JablotronResponse(200, body, cookie);
+    }
+
+    private JablotronResponse noSession() {
+        return ok("{\"status\":800}", "");
+    }
+
+    private void roundTrip() {
+        requests.incrementAndGet();
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private String getPath(String url) {
+        return url.startsWith(JablotronSession.JABLOTRON_URL) ? url.substring(JablotronSession.JABLOTRON_URL.length()) : url;
+    }
+
+    private Map<String, String> parseParameters(String urlParameters) {
+        Map<String, String> params = new ConcurrentHashMap<>();
+        for (String pair : urlParameters.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(pair.substring(0, eq), pair.substring(eq + 1));
+            }
+        }
+        return params;
+    }
+
+    private static class Account {
+        private final String password;
+        private final Widget[] widgets;
+
+        Account(String password, int count, int firstId) {
+            this.password = password;
+            this.widgets = new Widget[count];
+            for (int i = 0; i < count; i++) {
+                widgets[i] = new Widget(this, String.valueOf(firstId + i + 1));
+            }
+        }
+
+        Widget find(String id) {
+            for (Widget widget : widgets) {
+                if (widget.id.equals(id)) {
+                    return widget;
+                }
+            }
+            return null;
+        }
+
+        String getWidgetJson() {
+            StringBuilder ids = new StringBuilder();
+            StringBuilder details = new StringBuilder();
+            for (int i = 0; i < widgets.length; i++) {
+                if (i > 0) {
+                    ids.append(',');
+                    details.append(',');
+                }
+                ids.append(widgets[i].id);
+                details.append("{\"name\":\"Simulated ").append(widgets[i].id)
+                        .append("\",\"url\":\"").append(JablotronSession.JABLOTRON_URL)
+                        .append(JablotronSession.SERVICE_URL).append(widgets[i].id).append("\"}");
+            }
+            return "{\"status\":200,\"cnt-widgets\":" + widgets.length + ",\"widgets\":[" + ids
+                    + "],\"widget\":[" + details + "]}";
+        }
+    }
+
+    private static class Widget {
+        private final Account account;
+        private final String id;
+        private final int[] sections = new int[3];
+        private final int[] pgs = new int[2];
+        private int alarm = 0;
+        private long lastEntry = System.currentTimeMillis() / 1000;
+
+        Widget(Account account, String id) {
+            this.account = account;
+            this.id = id;
+        }
+
+        synchronized void applyCode(String code) {
+            // the simulated keypad arms as many sections as the first digit says, 5 disarms
+            int digit = code.charAt(0) - '0';
+            for (int i = 0; i < sections.length; i++) {
+                sections[i] = (digit != 5 && i < digit) ? 1 : 0;
+            }
+            alarm = 0;
+            lastEntry = System.currentTimeMillis() / 1000;
+        }
+
+        synchronized void applyPG(int pg, boolean on) {
+            pgs[pg] = on ? 1 : 0;
+        }
+
+        synchronized String getStatusJson(Random random) {
+            if (random != null) {
+                int pos = random.nextInt(sections.length + pgs.length + 1);
+                if (pos < sections.length) {
+                    sections[pos] ^= 1;
+                } else if (pos < sections.length + pgs.length) {
+                    pgs[pos - sections.length] ^= 1;
+                } else {
+                    alarm ^= 1;
+                }
+                lastEntry = System.currentTimeMillis() / 1000;
+            }
+            StringBuilder json = new StringBuilder("{\"status\":200,\"controlDisabled\":false,\"service\":0,\"isAlarm\":");
+            json.append(alarm).append(",\"sekce\":[");
+            appendStates(json, sections);
+            json.append("],\"pgm\":[");
+            appendStates(json, pgs);
+            json.append("],\"last_entry\":{\"cid\":{\"time\":").append(lastEntry).append("}}}");
+            return json.toString();
+        }
+
+        private void appendStates(StringBuilder json, int[] states) {
+            for (int i = 0; i < states.length; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append("{\"stav\":").append(states[i]).append('}');
+            }
+        }
+    }
+}
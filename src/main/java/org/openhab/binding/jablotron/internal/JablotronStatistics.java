@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.jablotron.internal;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Running statistics of the section, PG and alarm states kept in daily buckets covering
+ * the last week. Every state update costs a constant amount of work, queries sum at most
+ * {@link #DAYS} buckets.
+ *
+ * @author Ondrej Pecta
+ * @since 1.12.0
+ */
+public class JablotronStatistics {
+
+    static final int DAYS = 7;
+
+    private final ZoneId zone;
+    private final Map<String, Counter> counters = new HashMap<>();
+
+    public JablotronStatistics(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    /**
+     * Records the state of a section, PG output or the alarm.
+     *
+     * @param name  A, B, ABC, PGX, PGY or alarm
+     * @param state 1 if armed (active), 0 otherwise
+     * @param now   current time in ms
+     */
+    public synchronized void update(String name, int state, long now) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            counter = new Counter();
+            counter.state = state;
+            counter.since = now;
+            counters.put(name, counter);
+            return;
+        }
+
+        if (counter.state == 1) {
+            addArmedTime(counter, counter.since, now);
+        }
+        counter.since = now;
+        if (state != counter.state) {
+            long day = getDay(now);
+            bucket(counter, day);
+            counter.transitions[index(day)]++;
+            if (state == 1) {
+                counter.activations[index(day)]++;
+            }
+            counter.state = state;
+        }
+    }
+
+    /**
+     * @param metric one of armedToday, armedWeek (seconds), countToday, countWeek (activations),
+     *               transitionsToday, transitionsWeek
+     * @return the value or -1 if the name or metric is not known
+     */
+    public synchronized long get(String name, String metric, long now) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            return isMetric(metric) ? 0 : -1;
+        }
+
+        int days = metric.endsWith("Week") ? DAYS : 1;
+        long today = getDay(now);
+        long armed = 0;
+        long activations = 0;
+        long transitions = 0;
+        for (long day = today - days + 1; day <= today; day++) {
+            int i = index(day);
+            if (counter.days[i] == day) {
+                armed += counter.armed[i];
+                activations += counter.activations[i];
+                transitions += counter.transitions[i];
+            }
+        }
+        if (counter.state == 1 && now > counter.since) {
+            //the ongoing armed interval, clipped to the queried days
+            long from = Math.max(counter.since, getDayStart(today - days + 1));
+            armed += Math.max(0, now - from);
+        }
+
+        switch (metric) {
+            case "armedToday":
+            case "armedWeek":
+                return armed / 1000;
+            case "countToday":
+            case "countWeek":
+                return activations;
+            case "transitionsToday":
+            case "transitionsWeek":
+                return transitions;
+            default:
+                return -1;
+        }
+    }
+
+    public static boolean isMetric(String metric) {
+        switch (metric) {
+            case "armedToday":
+            case "armedWeek":
+            case "countToday":
+            case "countWeek":
+            case "transitionsToday":
+            case "transitionsWeek":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void addArmedTime(Counter counter, long from, long to) {
+        //split the interval at midnights, older days than a week are not kept anyway
+        long day = Math.max(getDay(from), getDay(to) - DAYS + 1);
+        from = Math.max(from, getDayStart(day));
+        while (from < to) {
+            long end = Math.min(to, getDayStart(day + 1));
+            bucket(counter, day);
+            counter.armed[index(day)] += end - from;
+            from = end;
+            day++;
+        }
+    }
+
+    private void bucket(Counter counter, long day) {
+        int i = index(day);
+        if (counter.days[i] != day) {
+            counter.days[i] = day;
+            counter.armed[i] = 0;
+            counter.activations[i] = 0;
+            counter.transitions[i] = 0;
+        }
+    }
+
+    private int index(long day) {
+        return (int) (day % DAYS);
+    }
+
+    private long getDay(long time) {
+        return Instant.ofEpochMilli(time).atZone(zone).toLocalDate().toEpochDay();
+    }
+
+    private long getDayStart(long day) {
+        return LocalDate.ofEpochDay(day).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    private static class Counter {
+        private int state;
+        private long since;
+        private final long[] days = new long[DAYS];
+        private final long[] armed = new long[DAYS];
+        private final int[] activations = new int[DAYS];
+        private final int[] transitions = new int[DAYS];
+
+        Counter() {
+            Arrays.fill(days, -1);
+        }
+    }
+}
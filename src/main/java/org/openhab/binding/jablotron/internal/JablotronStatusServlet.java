@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.jablotron.internal;
+
+import com.google.gson.JsonObject;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+
+/**
+ * Read-only HTTP endpoint serving the last alarm status and recent events of the binding,
+ * so local tools do not need their own Jablonet sessions. Responses carry a weak ETag
+ * changing with the content; a request with a matching If-None-Match header and a
+ * {@code wait} parameter (seconds) is held until the status changes or the wait expires.
+ *
+ * @author Ondrej Pecta
+ * @since 1.12.0
+ */
+public class JablotronStatusServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int MAX_WAIT = 60;
+    private static final int MAX_WAITERS = 32;
+    private static final int RETRY_AFTER = 5;
+
+    private final boolean allowRemote;
+    //distinguishes the versions of servlet instances, e.g. after a restart
+    private final long created = System.currentTimeMillis();
+
+    private String status = null;
+    private long updated = 0;
+    private long version = 0;
+    private int waiters = 0;
+
+    public JablotronStatusServlet(boolean allowRemote) {
+        this.allowRemote = allowRemote;
+    }
+
+    /**
+     * Stores a new status document, waking up waiting requests if its content has changed.
+     */
+    public synchronized void update(JsonObject document) {
+        String newStatus = document.toString();
+        updated = System.currentTimeMillis();
+        if (!newStatus.equals(status)) {
+            status = newStatus;
+            version++;
+            notifyAll();
+        }
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (!allowRemote && !InetAddress.getByName(req.getRemoteAddr()).isLoopbackAddress()) {
+            resp.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        int wait = getWait(req);
+        String etag;
+        String body;
+        boolean overloaded = false;
+        synchronized (this) {
+            etag = getETag();
+            if (wait > 0 && etag.equals(ifNoneMatch) && waiters >= MAX_WAITERS) {
+                overloaded = true;
+            } else if (wait > 0 && etag.equals(ifNoneMatch)) {
+                waiters++;
+                try {
+                    long deadline = System.currentTimeMillis() + wait * 1000L;
+                    long remaining;
+                    while (etag.equals(getETag()) && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                        wait(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    waiters--;
+                }
+                etag = getETag();
+            }
+            body = (status == null) ? null : "{\"version\":" + version + ",\"updated\":" + updated + ",\"status\":" + status + "}";
+        }
+
+        if (overloaded) {
+            //an immediate 304 would make clients looping on long polls spin
+            resp.setHeader("Retry-After", String.valueOf(RETRY_AFTER));
+            resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        if (body == null) {
+            resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        resp.setHeader("ETag", etag);
+        resp.setHeader("Cache-Control", "no-cache");
+        if (etag.equals(ifNoneMatch)) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        PrintWriter writer = resp.getWriter();
+        writer.write(body);
+        writer.flush();
+    }
+
+    private String getETag() {
+        return "W/\"" + created + "-" + version + "\"";
+    }
+
+    private int getWait(HttpServletRequest req) {
+        String wait = req.getParameter("wait");
+        if (wait == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Math.min(MAX_WAIT, Integer.parseInt(wait)));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.jablotron.internal;
+
+import org.openhab.binding.jablotron.JablotronEvent;
+import org.openhab.binding.jablotron.JablotronEventListener;
+import org.openhab.binding.jablotron.JablotronEventSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One subscription of a {@link JablotronEventListener}. Events are passed through a bounded
+ * single producer / single consumer ring buffer to a dedicated dispatcher thread, so
+ * {@link #offer(JablotronEvent)} never blocks. The binding only offers events while holding
+ * its session lock, which keeps the producer side single threaded.
+ *
+ * @author Ondrej Pecta
+ * @since 1.12.0
+ */
+public class JablotronSubscriber implements JablotronEventSource.JablotronSubscription, Runnable {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(JablotronSubscriber.class);
+
+    static final int MAX_CAPACITY = 1 << 16;
+
+    private final JablotronEventListener listener;
+    private final long ownerId;
+    private final AtomicReferenceArray<JablotronEvent> buffer;
+    private final int mask;
+
+    //next position to read, written by the dispatcher thread only
+    private final AtomicLong head = new AtomicLong();
+    //next position to write, written by the producer only
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Thread thread;
+    private volatile boolean closed = false;
+
+    /**
+     * @param ownerId id of the bundle the listener belongs to, or -1 if not known
+     */
+    public JablotronSubscriber(JablotronEventListener listener, int capacity, long ownerId) {
+        if (capacity < 1 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Capacity must be between 1 and " + MAX_CAPACITY + ": " + capacity);
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.listener = listener;
+        this.ownerId = ownerId;
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.thread = new Thread(this, "Jablotron event dispatcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * @return false if the event was dropped because the buffer is full or the subscription closed
+     */
+    public boolean offer(JablotronEvent event) {
+        if (closed) {
+            return false;
+        }
+        long position = tail.get();
+        if (position - head.get() > mask) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        buffer.set((int) (position & mask), event);
+        tail.set(position + 1);
+        LockSupport.unpark(thread);
+        return true;
+    }
+
+    @Override
+    public void run() {
+        while (!closed) {
+            long position = head.get();
+            if (position == tail.get()) {
+                //offer() and close() unpark the dispatcher
+                LockSupport.park(this);
+                continue;
+            }
+            int index = (int) (position & mask);
+            JablotronEvent event = buffer.get(index);
+            buffer.set(index, null);
+            head.set(position + 1);
+            try {
+                listener.eventReceived(event);
+            } catch (RuntimeException e) {
+                logger.error("Jablotron event listener failed: {}", e.toString());
+            }
+        }
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+    }
+
+    public long getOwnerId() {
+        return ownerId;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+}
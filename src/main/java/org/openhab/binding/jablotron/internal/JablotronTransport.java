@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.jablotron.internal;
+
+/**
+ * Carries the HTTP exchanges of a {@link JablotronSession} to the Jablonet cloud.
+ * Implementations never throw, failures are returned as a {@link JablotronResponse}
+ * holding the exception.
+ *
+ * @author Ondrej Pecta
+ * @since 1.12.0
+ */
+public interface JablotronTransport {
+
+    /**
+     * Sends a GET request.
+     *
+     * @param url     target url
+     * @param referer value of the Referer header
+     * @param cookie  session cookie, may be empty
+     * @param ajax    true for XMLHttpRequest calls, false for page loads
+     * @return the response
+     */
+    JablotronResponse sendGet(String url, String referer, String cookie, boolean ajax);
+
+    /**
+     * Sends a form encoded POST request as XMLHttpRequest.
+     *
+     * @param url           target url
+     * @param referer       value of the Referer header
+     * @param cookie        session cookie, may be empty
+     * @param urlParameters form encoded request body
+     * @return the response
+     */
+    JablotronResponse sendPost(String url, String referer, String cookie, String urlParameters);
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.jablotron.internal;
+
+import org.openhab.core.types.State;
+
+/**
+ * Decides whether a polled item state is posted to the event bus. A policy is configured
+ * as comma separated options, e.g. {@code mode=change,minInterval=60000,debounce=5000}:
+ * <ul>
+ * <li>mode - {@code change} posts only states differing from the item state (default),
+ * {@code always} posts every polled state</li>
+ * <li>minInterval - minimum time between two posts of the item in ms</li>
+ * <li>debounce - time a new state must stay the same before it is posted in ms</li>
+ * </ul>
+ * A state held back stays the candidate until a newer poll replaces it. {@link #getHeldUntil()}
+ * tells when it may be posted, so the caller can post it by {@link #takeHeldState(State, long)}
+ * once the window expires instead of waiting for the next poll.
+ *
+ * @author Ondrej Pecta
+ * @since 1.12.0
+ */
+public class JablotronUpdatePolicy {
+
+    private final String spec;
+    private boolean always = false;
+    private long minInterval = 0;
+    private long debounce = 0;
+
+    private long lastPublished = 0;
+    private State candidate = null;
+    private long candidateSince = 0;
+    private boolean held = false;
+
+    public JablotronUpdatePolicy(String spec) {
+        this.spec = spec;
+        for (String option : spec.split(",")) {
+            String[] parts = option.trim().split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid update policy option '" + option + "'");
+            }
+            String value = parts[1].trim();
+            switch (parts[0].trim()) {
+                case "mode":
+                    if (!value.equals("change") && !value.equals("always")) {
+                        throw new IllegalArgumentException("Invalid update policy mode '" + value + "'");
+                    }
+                    always = value.equals("always");
+                    break;
+                case "minInterval":
+                    minInterval = Long.parseLong(value);
+                    break;
+                case "debounce":
+                    debounce = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown update policy option '" + parts[0] + "'");
+            }
+        }
+    }
+
+    /**
+     * @return the options the policy was created from
+     */
+    public String getSpec() {
+        return spec;
+    }
+
+    /**
+     * @return a fresh policy with the same options and no history
+     */
+    public JablotronUpdatePolicy copy() {
+        return new JablotronUpdatePolicy(spec);
+    }
+
+    /**
+     * @param newState polled state
+     * @param oldState current item state
+     * @param now      current time in ms
+     * @return true if the new state is to be posted now, the post is recorded then
+     */
+    public synchronized boolean shouldPublish(State newState, State oldState, long now) {
+        if (!newState.equals(candidate)) {
+            candidate = newState;
+            candidateSince = now;
+        }
+
+        held = false;
+
+        if (!always && newState.equals(oldState)) {
+            return false;
+        }
+        if (getPublishableAt() > now) {
+            held = true;
+            return false;
+        }
+        lastPublished = now;
+        return true;
+    }
+
+    /**
+     * @return time in ms the held back state may be posted at, 0 if no state is held back
+     */
+    public synchronized long getHeldUntil() {
+        return held ? getPublishableAt() : 0;
+    }
+
+    /**
+     * @param oldState current item state
+     * @param now      current time in ms
+     * @return the held back state if it is to be posted now, the post is recorded then, null otherwise
+     */
+    public synchronized State takeHeldState(State oldState, long now) {
+        if (!held) {
+            return null;
+        }
+        return shouldPublish(candidate, oldState, now) ? candidate : null;
+    }
+
+    private long getPublishableAt() {
+        long at = 0;
+        if (debounce > 0) {
+            at = candidateSince + debounce;
+        }
+        if (minInterval > 0 && lastPublished > 0) {
+            at = Math.max(at, lastPublished + minInterval);
+        }
+        return at;
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.jablotron.internal;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Records a session against the simulated cloud and replays the recording, checking that
+ * credentials, codes and cookies never reach the capture file.
+ *
+ * @author Ondrej Pecta
+ * @since 1.12.0
+ */
+public class JablotronCaptureTransportTest {
+
+    private static final String EMAIL = "user0@example.com";
+    private static final String PASSWORD = "secret0";
+    private static final String CODE = "1111";
+
+    @Test
+    public void testStripTimestamp() {
+        assertEquals("https://x/stav.php", JablotronCaptureTransport.stripTimestamp("https://x/stav.php?_=1493034785000"));
+        assertEquals("https://x/stav.php?a=1", JablotronCaptureTransport.stripTimestamp("https://x/stav.php?_=1493034785000&a=1"));
+        assertEquals("https://x/stav.php?a=1", JablotronCaptureTransport.stripTimestamp("https://x/stav.php?a=1&_=1493034785000"));
+        assertEquals("https://x/stav.php?a=1&b=2", JablotronCaptureTransport.stripTimestamp("https://x/stav.php?a=1&_=1&b=2"));
+    }
+
+    @Test
+    public void testRedactParameters() {
+        assertEquals("login=***&heslo=***&aStatus=200&loginType=Login",
+                JablotronCaptureTransport.redactParameters("login=" + EMAIL + "&heslo=" + PASSWORD + "&aStatus=200&loginType=Login"));
+        assertEquals("section=STATE&status=&code=***",
+                JablotronCaptureTransport.redactParameters("section=STATE&status=&code=" + CODE));
+        assertEquals("section=STATE&status=&code=", JablotronCaptureTransport.redactParameters("section=STATE&status=&code="));
+        assertEquals("", JablotronCaptureTransport.redactParameters(""));
+    }
+
+    @Test
+    public void testCaptureAndReplay() throws Exception {
+        Path file = Files.createTempFile("jablotron-capture", ".jsonl");
+        try {
+            JablotronSimulatedCloud cloud = new JablotronSimulatedCloud(1, 0, 0, 0, 0);
+            cloud.addAccount(EMAIL, PASSWORD);
+            JablotronCaptureTransport capture = new JablotronCaptureTransport(cloud, file.toString());
+            int[] captured = runSession(capture);
+            capture.close();
+
+            String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            assertFalse(content.contains(EMAIL));
+            assertFalse(content.contains("user0%40example.com"));
+            assertFalse(content.contains(PASSWORD));
+            assertFalse(content.contains("PHPSESSID=sim"));
+            assertFalse(content.contains("_="));
+
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            JsonParser parser = new JsonParser();
+            for (String line : lines) {
+                JsonObject record = parser.parse(line).getAsJsonObject();
+                String request = record.get("request").getAsString();
+                assertFalse(request, request.contains(CODE));
+                if (record.has("cookie")) {
+                    assertEquals("PHPSESSID=" + JablotronCaptureTransport.REDACTED, record.get("cookie").getAsString());
+                }
+            }
+
+            JablotronReplayTransport replay = new JablotronReplayTransport(file.toString(), false);
+            assertEquals(lines.size(), replay.size());
+            int[] replayed = runSession(replay);
+            for (int i = 0; i < captured.length; i++) {
+                assertEquals(captured[i], replayed[i]);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * @return section states before and after entering the code
+     */
+    private int[] runSession(JablotronTransport transport) {
+        JablotronSession session = new JablotronSession(transport);
+        session.setCredentials(EMAIL, PASSWORD);
+        assertTrue(session.login());
+
+        JablotronResponse before = session.requestStatus();
+        assertTrue(before.isOKStatus());
+        assertEquals(4, session.sendUserCode("").getJablotronResult());
+        assertEquals(1, session.sendUserCode(CODE).getJablotronResult());
+        JablotronResponse after = session.requestStatus();
+        assertTrue(after.isOKStatus());
+        session.logout();
+
+        return new int[]{before.getSectionState(0), before.getSectionState(1), before.getSectionState(2),
+                after.getSectionState(0), after.getSectionState(1), after.getSectionState(2)};
+    }
+}